@@ -0,0 +1,339 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** A compressed set of non-negative ints in the style of a Roaring
+ *  bitmap.  Values are grouped by their upper 16 bits; each group is
+ *  kept as a sorted array of the lower 16 bits while it has at most
+ *  ARRAY_MAX members, and as a 65536-bit bitset once it grows past
+ *  that.  Commit-graph positions of related commits are close
+ *  together, so reachability sets compress well.
+ *  @author Michelle Wu
+ */
+class Bitmap {
+
+    /** Largest group that is kept as an array. */
+    private static final int ARRAY_MAX = 4096;
+
+    /** Number of longs in a bitset group. */
+    private static final int WORDS = 1 << 10;
+
+    /** Encoded tag of an array group. */
+    private static final int ARRAY = 0;
+
+    /** Encoded tag of a bitset group, whose words are written as
+     *  fixed-width longs. */
+    private static final int BITSET = 1;
+
+    /** Upper 16 bits of each group, ascending. */
+    private int[] keys = new int[0];
+
+    /** Members of each group: char[] arrays or long[] bitsets. */
+    private Object[] groups = new Object[0];
+
+    /** Number of members of each group. */
+    private int[] sizes = new int[0];
+
+    /** Number of groups in use. */
+    private int count;
+
+    /**
+     * check whether X is in the set.
+     * @param x : value.
+     * @return boolean
+     */
+    boolean contains(int x) {
+        int i = Arrays.binarySearch(keys, 0, count, x >>> 16);
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) x;
+        if (groups[i] instanceof long[]) {
+            return (((long[]) groups[i])[low >>> 6] & 1L << low) != 0;
+        }
+        return Arrays.binarySearch((char[]) groups[i], 0, sizes[i], low) >= 0;
+    }
+
+    /**
+     * add X to the set.
+     * @param x : non-negative value.
+     */
+    void add(int x) {
+        int i = Arrays.binarySearch(keys, 0, count, x >>> 16);
+        if (i < 0) {
+            i = -i - 1;
+            insertGroup(i, x >>> 16, new char[4], 0);
+        }
+        char low = (char) x;
+        if (groups[i] instanceof long[]) {
+            long[] bits = (long[]) groups[i];
+            if ((bits[low >>> 6] & 1L << low) == 0) {
+                bits[low >>> 6] |= 1L << low;
+                sizes[i] += 1;
+            }
+            return;
+        }
+        char[] values = (char[]) groups[i];
+        int j = Arrays.binarySearch(values, 0, sizes[i], low);
+        if (j >= 0) {
+            return;
+        }
+        j = -j - 1;
+        if (sizes[i] == ARRAY_MAX) {
+            long[] bits = toBits(values, sizes[i]);
+            bits[low >>> 6] |= 1L << low;
+            groups[i] = bits;
+        } else {
+            if (sizes[i] == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+                groups[i] = values;
+            }
+            System.arraycopy(values, j, values, j + 1, sizes[i] - j);
+            values[j] = low;
+        }
+        sizes[i] += 1;
+    }
+
+    /**
+     * add every member of OTHER to this set.
+     * @param other : another set.
+     */
+    void or(Bitmap other) {
+        for (int k = 0; k < other.count; k += 1) {
+            int i = Arrays.binarySearch(keys, 0, count, other.keys[k]);
+            if (i < 0) {
+                insertGroup(-i - 1, other.keys[k], copy(other.groups[k]),
+                        other.sizes[k]);
+                continue;
+            }
+            long[] bits = groups[i] instanceof long[] ? (long[]) groups[i]
+                    : toBits((char[]) groups[i], sizes[i]);
+            if (other.groups[k] instanceof long[]) {
+                long[] theirs = (long[]) other.groups[k];
+                for (int w = 0; w < WORDS; w += 1) {
+                    bits[w] |= theirs[w];
+                }
+            } else {
+                char[] theirs = (char[]) other.groups[k];
+                for (int j = 0; j < other.sizes[k]; j += 1) {
+                    bits[theirs[j] >>> 6] |= 1L << theirs[j];
+                }
+            }
+            setGroup(i, bits);
+        }
+    }
+
+    /**
+     * remove every member of OTHER from this set.
+     * @param other : another set.
+     */
+    void andNot(Bitmap other) {
+        for (int k = 0; k < other.count; k += 1) {
+            int i = Arrays.binarySearch(keys, 0, count, other.keys[k]);
+            if (i < 0) {
+                continue;
+            }
+            long[] bits = groups[i] instanceof long[] ? (long[]) groups[i]
+                    : toBits((char[]) groups[i], sizes[i]);
+            if (other.groups[k] instanceof long[]) {
+                long[] theirs = (long[]) other.groups[k];
+                for (int w = 0; w < WORDS; w += 1) {
+                    bits[w] &= ~theirs[w];
+                }
+            } else {
+                char[] theirs = (char[]) other.groups[k];
+                for (int j = 0; j < other.sizes[k]; j += 1) {
+                    bits[theirs[j] >>> 6] &= ~(1L << theirs[j]);
+                }
+            }
+            setGroup(i, bits);
+        }
+        int kept = 0;
+        for (int i = 0; i < count; i += 1) {
+            if (sizes[i] > 0) {
+                keys[kept] = keys[i];
+                groups[kept] = groups[i];
+                sizes[kept] = sizes[i];
+                kept += 1;
+            }
+        }
+        Arrays.fill(groups, kept, count, null);
+        count = kept;
+    }
+
+    /**
+     * get the number of members.
+     * @return int
+     */
+    int cardinality() {
+        int n = 0;
+        for (int i = 0; i < count; i += 1) {
+            n += sizes[i];
+        }
+        return n;
+    }
+
+    /**
+     * list the members in ascending order.
+     * @return int[]
+     */
+    int[] toArray() {
+        int[] result = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < count; i += 1) {
+            int high = keys[i] << 16;
+            if (groups[i] instanceof long[]) {
+                long[] bits = (long[]) groups[i];
+                for (int w = 0; w < WORDS; w += 1) {
+                    for (long b = bits[w]; b != 0; b &= b - 1) {
+                        result[n++] = high | w << 6
+                                | Long.numberOfTrailingZeros(b);
+                    }
+                }
+            } else {
+                char[] values = (char[]) groups[i];
+                for (int j = 0; j < sizes[i]; j += 1) {
+                    result[n++] = high | values[j];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * write this set to E.
+     * @param e : destination.
+     */
+    void encode(Encoder e) {
+        e.writeVarint(count);
+        for (int i = 0; i < count; i += 1) {
+            e.writeVarint(keys[i]);
+            if (groups[i] instanceof long[]) {
+                e.writeVarint(BITSET);
+                for (long w : (long[]) groups[i]) {
+                    e.writeLong(w);
+                }
+            } else {
+                char[] values = (char[]) groups[i];
+                e.writeVarint(ARRAY);
+                e.writeVarint(sizes[i]);
+                int prev = 0;
+                for (int j = 0; j < sizes[i]; j += 1) {
+                    e.writeVarint(values[j] - prev);
+                    prev = values[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * read a set written by encode.
+     * @param d : source.
+     * @return Bitmap
+     */
+    static Bitmap decode(Decoder d) {
+        Bitmap b = new Bitmap();
+        int n = d.readInt();
+        for (int i = 0; i < n; i += 1) {
+            int key = d.readInt();
+            int tag = d.readInt();
+            if (tag == BITSET) {
+                long[] bits = new long[WORDS];
+                int size = 0;
+                for (int w = 0; w < WORDS; w += 1) {
+                    bits[w] = d.readLong();
+                    size += Long.bitCount(bits[w]);
+                }
+                b.insertGroup(b.count, key, bits, size);
+            } else if (tag != ARRAY) {
+                throw new IllegalArgumentException("unknown bitmap group "
+                        + tag);
+            } else {
+                int size = d.readInt();
+                char[] values = new char[Math.max(size, 1)];
+                int prev = 0;
+                for (int j = 0; j < size; j += 1) {
+                    prev += d.readInt();
+                    values[j] = (char) prev;
+                }
+                b.insertGroup(b.count, key, values, size);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * insert a group at I.
+     * @param i : index among the groups.
+     * @param key : upper 16 bits.
+     * @param group : char[] or long[] members.
+     * @param size : number of members.
+     */
+    private void insertGroup(int i, int key, Object group, int size) {
+        if (count == keys.length) {
+            int cap = Math.max(4, count * 2);
+            keys = Arrays.copyOf(keys, cap);
+            groups = Arrays.copyOf(groups, cap);
+            sizes = Arrays.copyOf(sizes, cap);
+        }
+        System.arraycopy(keys, i, keys, i + 1, count - i);
+        System.arraycopy(groups, i, groups, i + 1, count - i);
+        System.arraycopy(sizes, i, sizes, i + 1, count - i);
+        keys[i] = key;
+        groups[i] = group;
+        sizes[i] = size;
+        count += 1;
+    }
+
+    /**
+     * replace group I by BITS, turning it back into an array if it
+     * has become small enough.
+     * @param i : index among the groups.
+     * @param bits : members as a bitset.
+     */
+    private void setGroup(int i, long[] bits) {
+        int size = 0;
+        for (long w : bits) {
+            size += Long.bitCount(w);
+        }
+        sizes[i] = size;
+        if (size > ARRAY_MAX) {
+            groups[i] = bits;
+            return;
+        }
+        char[] values = new char[Math.max(size, 1)];
+        int n = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            for (long b = bits[w]; b != 0; b &= b - 1) {
+                values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(b));
+            }
+        }
+        groups[i] = values;
+    }
+
+    /**
+     * expand the first SIZE members of VALUES into a bitset.
+     * @param values : sorted lower bits.
+     * @param size : number of members.
+     * @return long[]
+     */
+    private static long[] toBits(char[] values, int size) {
+        long[] bits = new long[WORDS];
+        for (int j = 0; j < size; j += 1) {
+            bits[values[j] >>> 6] |= 1L << values[j];
+        }
+        return bits;
+    }
+
+    /**
+     * copy a group so that two sets never share one.
+     * @param group : char[] or long[].
+     * @return copy
+     */
+    private static Object copy(Object group) {
+        if (group instanceof long[]) {
+            return ((long[]) group).clone();
+        }
+        return ((char[]) group).clone();
+    }
+}
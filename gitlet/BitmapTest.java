@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Bitmap against a TreeSet of the same members.
+ *  @author Michelle Wu
+ */
+public class BitmapTest {
+
+    /** Return the members of S in ascending order. */
+    private static int[] members(TreeSet<Integer> s) {
+        return s.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Return a bitmap of N values drawn by R from [0, RANGE), adding
+     *  the same values to S. */
+    private static Bitmap random(Random r, int n, int range,
+                                 TreeSet<Integer> s) {
+        Bitmap b = new Bitmap();
+        for (int i = 0; i < n; i += 1) {
+            int x = r.nextInt(range);
+            b.add(x);
+            s.add(x);
+        }
+        return b;
+    }
+
+    /** Return B encoded and decoded again. */
+    private static Bitmap roundTrip(Bitmap b) {
+        Encoder e = new Encoder('t');
+        b.encode(e);
+        Decoder d = new Decoder(e.toByteArray(), 't');
+        Bitmap result = Bitmap.decode(d);
+        assertFalse(d.hasMore());
+        return result;
+    }
+
+    /** Sets small enough to stay arrays and large enough to become
+     *  bitsets hold what was added, and survive encoding. */
+    @Test
+    public void addAndContains() {
+        Random r = new Random(11);
+        for (int n : new int[] {0, 10, 4096, 5000, 60000}) {
+            TreeSet<Integer> s = new TreeSet<>();
+            Bitmap b = random(r, n, 1 << 17, s);
+            assertArrayEquals(members(s), b.toArray());
+            assertEquals(s.size(), b.cardinality());
+            for (int i = 0; i < 1000; i += 1) {
+                int x = r.nextInt(1 << 17);
+                assertEquals(s.contains(x), b.contains(x));
+            }
+            assertArrayEquals(members(s), roundTrip(b).toArray());
+        }
+    }
+
+    /** Commits in A and not in B: andNot agrees with removing from a
+     *  TreeSet, for every mix of array and bitset groups, and an
+     *  emptied group is dropped. */
+    @Test
+    public void andNot() {
+        Random r = new Random(12);
+        int[] sizes = {0, 50, 3000, 20000, 100000};
+        for (int na : sizes) {
+            for (int nb : sizes) {
+                TreeSet<Integer> expected = new TreeSet<>();
+                TreeSet<Integer> removed = new TreeSet<>();
+                Bitmap result = random(r, na, 3 << 16, expected);
+                result.andNot(random(r, nb, 3 << 16, removed));
+                expected.removeAll(removed);
+                assertArrayEquals(members(expected), result.toArray());
+                assertEquals(expected.size(), result.cardinality());
+                assertArrayEquals(members(expected),
+                        roundTrip(result).toArray());
+            }
+        }
+        Bitmap a = new Bitmap();
+        a.add(1);
+        a.add(1 << 16);
+        Bitmap b = new Bitmap();
+        b.add(1);
+        a.andNot(b);
+        assertArrayEquals(new int[] {1 << 16}, a.toArray());
+        a.andNot(a);
+        assertEquals(0, a.cardinality());
+    }
+
+    /** or is the union, and the operand is left unchanged. */
+    @Test
+    public void or() {
+        Random r = new Random(13);
+        TreeSet<Integer> expected = new TreeSet<>();
+        Bitmap result = random(r, 8000, 1 << 18, expected);
+        Bitmap other = random(r, 300, 1 << 18, expected);
+        int[] before = other.toArray();
+        result.or(other);
+        assertArrayEquals(members(expected), result.toArray());
+        assertArrayEquals(before, other.toArray());
+    }
+}
@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** The blob store: file contents saved under .gitlet/.blobs/ (or
+ *  packed by gc), named by the SHA-1 of the contents.  Since a blob's
+ *  name is its hash, comparing a working file with a stored version
+ *  only requires hashing the working file.  Contents are always streamed in
+ *  fixed-size buffers and copied byte for byte, so blobs of any size
+ *  and encoding round-trip unchanged.
+ *  @author Michelle Wu
+ */
+class Blobs {
+
+    /** object kind of blobs. */
+    static final char KIND = ObjectStore.BLOB;
+
+    /**
+     * check whether blob ID is stored.
+     * @param id : blob hash.
+     * @return boolean
+     */
+    static boolean contains(String id) {
+        return ObjectStore.contains(KIND, id);
+    }
+
+    /**
+     * compute the blob hash of the contents of F, reading it in
+     * fixed-size chunks.
+     * @param f : plain file.
+     * @return blob id.
+     */
+    static ObjectId hash(File f) {
+        return ObjectId.of(Sha1.of(f), 0);
+    }
+
+    /**
+     * save the contents of SRC as a blob, hashing them while they are
+     * copied.
+     * @param src : plain file.
+     * @return blob hash.
+     */
+    static String store(File src) {
+        return ObjectStore.write(KIND, src);
+    }
+
+    /**
+     * save the contents of SRC as the blob ID, unless that blob is
+     * already stored.
+     * @param src : plain file whose blob hash is ID.
+     * @param id : blob hash of SRC.
+     */
+    static void store(File src, String id) {
+        ObjectStore.write(KIND, src, id);
+    }
+
+    /**
+     * write the contents of blob ID to DEST, creating DEST and its
+     * parent directories as needed.
+     * @param id : blob hash.
+     * @param dest : destination file.
+     */
+    static void copyTo(String id, File dest) {
+        File parent = dest.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (InputStream in = open(id);
+             OutputStream out = new FileOutputStream(dest)) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * open blob ID for reading.
+     * @param id : blob hash.
+     * @return InputStream; the caller closes it.
+     */
+    static InputStream open(String id) throws IOException {
+        return ObjectStore.open(KIND, id);
+    }
+
+    /**
+     * check whether working file F has the contents of blob ID.
+     * @param f : working file.
+     * @param id : blob hash; may be null.
+     * @return true iff F exists and hashes to ID.
+     */
+    static boolean matches(File f, String id) {
+        return id != null && f.isFile() && hash(f).equals(ObjectId.of(id));
+    }
+}
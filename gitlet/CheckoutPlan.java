@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/** The working-file changes of a checkout or reset, collected before
+ *  any of them is made.  Callers finish every check that can refuse
+ *  the command first, then run the plan, which removes files (and any
+ *  directories that leaves empty) and then writes files on a pool of
+ *  Config.CHECKOUT_THREADS threads.
+ *  @author Michelle Wu
+ */
+class CheckoutPlan {
+
+    /** Files to remove, relative to cwd. */
+    private final TreeSet<String> deletes = new TreeSet<>();
+
+    /** Blob ids to write, by file name relative to cwd. */
+    private final TreeMap<String, String> writes = new TreeMap<>();
+
+    /** Current Working Directory. */
+    private final File cwd;
+
+    /**
+     * an empty plan for files under CWD.
+     * @param cwd : working directory.
+     */
+    CheckoutPlan(File cwd) {
+        this.cwd = cwd;
+    }
+
+    /**
+     * plan to remove PATH if it exists.
+     * @param path : file name relative to cwd.
+     */
+    void delete(String path) {
+        writes.remove(path);
+        deletes.add(path);
+    }
+
+    /**
+     * plan to write blob ID to PATH.
+     * @param path : file name relative to cwd.
+     * @param id : blob hash.
+     */
+    void write(String path, String id) {
+        deletes.remove(path);
+        writes.put(path, id);
+    }
+
+    /**
+     * carry out the plan.
+     */
+    void run() {
+        int threads = Config.getInt(Config.CHECKOUT_THREADS,
+                Runtime.getRuntime().availableProcessors());
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            ArrayList<String> gone = new ArrayList<>(deletes);
+            pool.submit(() -> gone.parallelStream().forEach(path ->
+                    new File(cwd, path).delete())).get();
+            for (String path : deletes) {
+                File dir = new File(cwd, path).getParentFile();
+                while (!dir.equals(cwd) && dir.delete()) {
+                    dir = dir.getParentFile();
+                }
+            }
+            TreeSet<File> dirs = new TreeSet<>();
+            for (String path : writes.keySet()) {
+                dirs.add(new File(cwd, path).getParentFile());
+            }
+            for (File dir : dirs) {
+                dir.mkdirs();
+            }
+            ArrayList<Map.Entry<String, String>> files =
+                    new ArrayList<>(writes.entrySet());
+            pool.submit(() -> files.parallelStream().forEach(e ->
+                    Blobs.copyTo(e.getValue(), new File(cwd, e.getKey()))))
+                    .get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,17 +1,17 @@
 package gitlet;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Map;
 import java.util.TreeMap;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Michelle Wu
  */
-public class Commit implements Serializable {
+public class Commit {
 
     /** default date and time of first commit. **/
     private static final LocalDateTime DEFAULT_TEMPORAL_TIME =
@@ -26,9 +26,8 @@ public class Commit implements Serializable {
     private static final String DEFAULT_STRING =
             "initial commit";
 
-    /** gitlet folder. **/
-    private static final File COMMIT_FOLDER =
-            new File("./.gitlet/.commits/");
+    /** type tag of encoded commits. **/
+    static final char KIND = ObjectStore.COMMIT;
 
     /** commit log. **/
     private String log;
@@ -36,20 +35,34 @@ public class Commit implements Serializable {
     /** time of commit. **/
     private ZonedDateTime time;
 
-    /** all files being tracked in this current commit.
+    /** hash of the root tree of files tracked in this commit. **/
+    private String tree;
+
+    /** all files being tracked in this current commit, read from
+     * tree on first use.
      * key: name of blob (filename)
      * value: hashed blob.**/
-    private TreeMap<String, String> trackedList;
+    private PathMap trackedList;
+
+    /**
+     * hash of immediate parent; null for the first commit.
+     */
+    private String parent;
 
     /**
-     * immediate parent.
+     * hash of parent from merge; default null.
      */
-    private Commit parent;
+    private String mergeParent = null;
 
     /**
-     * parent from merge; default null.
+     * immediate parent, loaded on first use by getParent().
      */
-    private Commit mergeParent = null;
+    private Commit parentCommit;
+
+    /**
+     * merge parent, loaded on first use by getMergeParent().
+     */
+    private Commit mergeParentCommit;
 
     /**
      * unique id of a commit.
@@ -65,22 +78,14 @@ public class Commit implements Serializable {
      * @param delList : list of REMOVES to be pushed
      */
     @SuppressWarnings("unchecked")
-    public Commit(String l, Commit p, TreeMap<String, String> addList,
-                  TreeMap<String, String> delList) throws IOException {
+    public Commit(String l, Commit p, Map<String, String> addList,
+                  Map<String, String> delList) throws IOException {
         log = l;
-        parent = p;
+        parent = p.hash;
+        parentCommit = p;
         time = ZonedDateTime.now();
-        trackedList = (TreeMap) p.trackedList.clone();
-
-        for (String key : addList.keySet()) {
-            trackedList.put(key, addList.get(key));
-        }
-
-        for (String key : delList.keySet()) {
-            trackedList.remove(key);
-        }
-        hash = Utils.sha1(log, time.toString(),
-                trackedList.toString(), parent.hash);
+        tree = Tree.update(p.tree, addList, delList);
+        hash = Utils.sha1(log, time.toString(), tree, parent);
         saveFile();
     }
 
@@ -95,23 +100,16 @@ public class Commit implements Serializable {
      */
     @SuppressWarnings("unchecked")
     public Commit(String l, Commit p, Commit mergeP,
-                  TreeMap<String, String> addList,
-                  TreeMap<String, String> delList) throws IOException {
+                  Map<String, String> addList,
+                  Map<String, String> delList) throws IOException {
         log = l;
-        parent = p;
-        mergeParent = mergeP;
+        parent = p.hash;
+        parentCommit = p;
+        mergeParent = mergeP.hash;
+        mergeParentCommit = mergeP;
         time = ZonedDateTime.now();
-        trackedList = (TreeMap) p.trackedList.clone();
-
-        for (String key : addList.keySet()) {
-            trackedList.put(key, addList.get(key));
-        }
-
-        for (String key : delList.keySet()) {
-            trackedList.remove(key);
-        }
-        hash = Utils.sha1(log, time.toString(),
-                trackedList.toString(), parent.hash + mergeParent.hash);
+        tree = Tree.update(p.tree, addList, delList);
+        hash = Utils.sha1(log, time.toString(), tree, parent + mergeParent);
         saveFile();
     }
 
@@ -125,22 +123,81 @@ public class Commit implements Serializable {
         log = DEFAULT_STRING;
         parent = null;
         time = DEFAULT_TIME;
-        trackedList = new TreeMap();
+        tree = Tree.update(null, new TreeMap<>(), new TreeMap<>());
 
         hash = Utils.sha1(log, time.toString());
         saveFile();
     }
 
+    /**
+     * make a commit converted from an older version, keeping its hash.
+     * @param hash : hash the commit already has.
+     * @param l : commit log.
+     * @param t : time of commit.
+     * @param root : hash of the root tree of its files.
+     * @param p : hash of the parent; null for the first commit.
+     * @param mergeP : hash of the merge parent, or null.
+     */
+    Commit(String hash, String l, ZonedDateTime t, String root, String p,
+           String mergeP) {
+        this.hash = hash;
+        log = l;
+        time = t;
+        tree = root;
+        parent = p;
+        mergeParent = mergeP;
+    }
+
+    /**
+     * read a commit from its encoding.
+     * @param d : decoder positioned after the header.
+     */
+    private Commit(Decoder d) {
+        hash = d.readId();
+        log = d.readString();
+        long seconds = d.readVarint();
+        int nanos = d.readInt();
+        time = ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos),
+                ZoneId.of(d.readString()));
+        parent = d.readOptionalId();
+        mergeParent = d.readOptionalId();
+        tree = d.readId();
+    }
+
+    /**
+     * encode this commit.
+     * @return bytes as read by decode.
+     */
+    public byte[] encode() {
+        Encoder e = new Encoder(KIND);
+        e.writeId(hash);
+        e.writeString(log);
+        e.writeVarint(time.toEpochSecond());
+        e.writeVarint(time.getNano());
+        e.writeString(time.getZone().getId());
+        e.writeOptionalId(parent);
+        e.writeOptionalId(mergeParent);
+        e.writeId(tree);
+        return e.toByteArray();
+    }
+
+    /**
+     * decode a commit written by encode.
+     * @param data : encoded commit.
+     * @return Commit
+     */
+    public static Commit decode(byte[] data) {
+        return new Commit(new Decoder(data, KIND));
+    }
+
     /**
      *get a commit from a file.
      * @param name
      * @return
      */
     public static Commit fromFile(String name) {
-        File f = new File(COMMIT_FOLDER, name + ".txt");
-        if (f.exists()) {
-            Commit c = Utils.readObject(f, Commit.class);
-            return c;
+        if (ObjectStore.contains(KIND, name)) {
+            return decode(ObjectStore.read(KIND, name));
         } else {
             throw new IllegalArgumentException("File no exist");
         }
@@ -152,11 +209,7 @@ public class Commit implements Serializable {
      * @throws IOException
      */
     public void saveFile() throws IOException {
-        File f = new File(COMMIT_FOLDER, hash + ".txt");
-        if (!f.exists()) {
-            f.createNewFile();
-        }
-        Utils.writeObject(f, this);
+        ObjectStore.write(KIND, hash, encode());
     }
 
     /**
@@ -177,25 +230,59 @@ public class Commit implements Serializable {
 
     /**
      * get tracked list.
-     * @return tree map.
+     * @return key: file name; value: blob hash.
      */
-    public TreeMap<String, String> trackedList() {
+    public PathMap trackedList() {
+        if (trackedList == null) {
+            trackedList = Tree.flatten(tree);
+        }
         return trackedList;
     }
 
     /**
-     * get functional parent.
-     * @return Commit
+     * get hash of the root tree.
+     * @return String
+     */
+    public String tree() {
+        return tree;
+    }
+
+    /**
+     * get functional parent, reading it from its file on first use.
+     * @return Commit, or null for the first commit
      */
     public Commit getParent() {
-        return parent;
+        if (parentCommit == null && parent != null) {
+            parentCommit = fromFile(parent);
+        }
+        return parentCommit;
     }
 
     /**
-     * get parent that resulted from a merge.
-     * @return Commit
+     * get parent that resulted from a merge,
+     * reading it from its file on first use.
+     * @return Commit, or null if this is not a merge commit
      */
     public Commit getMergeParent() {
+        if (mergeParentCommit == null && mergeParent != null) {
+            mergeParentCommit = fromFile(mergeParent);
+        }
+        return mergeParentCommit;
+    }
+
+    /**
+     * get hash of functional parent.
+     * @return String, or null for the first commit
+     */
+    public String getParentId() {
+        return parent;
+    }
+
+    /**
+     * get hash of parent that resulted from a merge.
+     * @return String, or null if this is not a merge commit
+     */
+    public String getMergeParentId() {
         return mergeParent;
     }
 
@@ -0,0 +1,498 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/** The shape of the commit history, kept in .gitlet/commit-graph.txt
+ *  so that ancestry questions can be answered without reading commits.
+ *  After an Encoder header the file holds a lookup table and then one
+ *  fixed-size record per commit, parents before children: the raw
+ *  20-byte hash, the positions of the parent and merge parent (-1 if
+ *  none), the generation number (1 for a root, otherwise one more than
+ *  the largest generation of its parents) and the commit time in
+ *  milliseconds.
+ *
+ *  The lookup table is the number N of records it covers, a fanout of
+ *  256 counts as in a pack index (entry B is the number of those
+ *  records whose hash starts with a byte of at most B), and the
+ *  positions of the N records in the order of their hashes.  Records
+ *  are appended as commits are made; those past the first N are
+ *  searched from the end, and the table is written again once there
+ *  are too many of them.  The file is mapped rather than read, so a
+ *  command touches only the records it looks at.  It is rebuilt from
+ *  the commit store if it is missing or stale, which renumbers the
+ *  commits.
+ *  @author Michelle Wu
+ */
+class CommitGraph {
+
+    /** type tag of the graph file. */
+    private static final char KIND = 'g';
+
+    /** Length of the Encoder header. */
+    private static final int HEADER = 4;
+
+    /** Position of the fanout table. */
+    private static final int FANOUT = HEADER + Integer.BYTES;
+
+    /** Position of the sorted positions. */
+    private static final int SORTED = FANOUT + 256 * Integer.BYTES;
+
+    /** Length of one record. */
+    private static final int RECORD = Encoder.ID_BYTES
+            + 3 * Integer.BYTES + Long.BYTES;
+
+    /** Number of records past the lookup table allowed, beyond a
+     *  sixteenth of those it covers, before it is written again. */
+    private static final int UNSORTED = 64;
+
+    /** Where the graph is saved. */
+    private static final File GRAPH_FILE =
+            new File(System.getProperty("user.dir"),
+                    ".gitlet/commit-graph.txt");
+
+    /** The mapped graph file. */
+    private final ByteBuffer map;
+
+    /** Position of the first record in map. */
+    private final int records;
+
+    /** Number of records. */
+    private final int count;
+
+    /**
+     * a graph over the mapped graph file MAP.
+     * @param map : contents of the graph file.
+     */
+    private CommitGraph(ByteBuffer map) {
+        byte[] header = new byte[HEADER];
+        map.get(0, header);
+        new Decoder(header, KIND);
+        this.map = map;
+        records = recordsStart(map);
+        count = (map.capacity() - records) / RECORD;
+    }
+
+    /**
+     * read the graph, building it if there is none.
+     * @return CommitGraph
+     */
+    static CommitGraph read() {
+        if (!GRAPH_FILE.exists() || !wellFormed(mapFile())) {
+            rebuild();
+        }
+        return new CommitGraph(mapFile());
+    }
+
+    /**
+     * check that MAP has the layout of a graph file, so that a damaged
+     * one is rebuilt rather than misread.
+     * @param map : contents of the graph file.
+     * @return boolean
+     */
+    private static boolean wellFormed(ByteBuffer map) {
+        if (map.capacity() < SORTED) {
+            return false;
+        }
+        long indexed = map.getInt(HEADER);
+        long start = SORTED + indexed * Integer.BYTES;
+        return indexed >= 0 && start <= map.capacity()
+                && (map.capacity() - start) % RECORD == 0
+                && indexed <= (map.capacity() - start) / RECORD;
+    }
+
+    /**
+     * map the graph file.
+     * @return read-only view of its contents.
+     */
+    private static ByteBuffer mapFile() {
+        try (FileChannel ch = FileChannel.open(GRAPH_FILE.toPath(),
+                StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * append commit C, whose parents are already in the graph.
+     * @param c : new commit.
+     */
+    static void add(Commit c) {
+        ByteBuffer map = GRAPH_FILE.exists() ? mapFile() : null;
+        if (map == null || !wellFormed(map)) {
+            rebuild();
+            return;
+        }
+        int start = recordsStart(map);
+        int n = (map.capacity() - start) / RECORD;
+        int p = find(map, c.getParentId());
+        int mp = find(map, c.getMergeParentId());
+        if ((p < 0 && c.getParentId() != null)
+                || (mp < 0 && c.getMergeParentId() != null)) {
+            rebuild();
+            return;
+        }
+        int gen = 1;
+        for (int q : new int[] {p, mp}) {
+            if (q >= 0) {
+                gen = Math.max(gen, map.getInt(start + q * RECORD
+                        + Encoder.ID_BYTES + 2 * Integer.BYTES) + 1);
+            }
+        }
+        byte[] rec = record(c.hash(), p, mp, gen,
+                c.getTime().toInstant().toEpochMilli());
+        int indexed = map.getInt(HEADER);
+        if (n + 1 - indexed <= UNSORTED + indexed / 16) {
+            try (OutputStream out = new FileOutputStream(GRAPH_FILE, true)) {
+                out.write(rec);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return;
+        }
+        byte[] all = new byte[(n + 1) * RECORD];
+        map.get(start, all, 0, n * RECORD);
+        System.arraycopy(rec, 0, all, n * RECORD, RECORD);
+        write(all);
+    }
+
+    /**
+     * find the position of the first record in the graph file MAP.
+     * @param map : contents of the graph file.
+     * @return offset.
+     */
+    private static int recordsStart(ByteBuffer map) {
+        return SORTED + map.getInt(HEADER) * Integer.BYTES;
+    }
+
+    /**
+     * find the record of commit ID in MAP: by binary search among the
+     * records the lookup table covers, and then among the rest from
+     * the end, where recent commits are.
+     * @param map : contents of the graph file.
+     * @param id : commit hash; may be null.
+     * @return position, or -1 if ID is null or not there.
+     */
+    private static int find(ByteBuffer map, String id) {
+        if (id == null) {
+            return -1;
+        }
+        byte[] raw = Encoder.rawId(id);
+        int start = recordsStart(map);
+        int indexed = map.getInt(HEADER);
+        int first = raw[0] & 0xFF;
+        int lo = first == 0 ? 0
+                : map.getInt(FANOUT + (first - 1) * Integer.BYTES);
+        int hi = map.getInt(FANOUT + first * Integer.BYTES);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int pos = map.getInt(SORTED + mid * Integer.BYTES);
+            int c = compare(map, start + pos * RECORD, raw);
+            if (c == 0) {
+                return pos;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int n = (map.capacity() - start) / RECORD;
+        for (int i = n - 1; i >= indexed; i -= 1) {
+            if (compare(map, start + i * RECORD, raw) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * compare the raw hash at AT in BUF with RAW.
+     * @param buf : graph file or records.
+     * @param at : offset of a hash.
+     * @param raw : Encoder.ID_BYTES bytes.
+     * @return negative, zero or positive as the hash at AT is less
+     *         than, equal to or greater than RAW.
+     */
+    private static int compare(ByteBuffer buf, int at, byte[] raw) {
+        for (int j = 0; j < raw.length; j += 1) {
+            int c = Integer.compare(buf.get(at + j) & 0xFF, raw[j] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * encode one record.
+     * @param id : commit hash.
+     * @param p : parent position or -1.
+     * @param mp : merge parent position or -1.
+     * @param gen : generation number.
+     * @param millis : commit time.
+     * @return bytes.
+     */
+    private static byte[] record(String id, int p, int mp, int gen,
+                                 long millis) {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD);
+        buf.put(Encoder.rawId(id)).putInt(p).putInt(mp).putInt(gen)
+                .putLong(millis);
+        return buf.array();
+    }
+
+    /**
+     * write the graph file holding RECORDS, with a lookup table covering
+     * all of them.  The file is replaced by renaming, so a graph mapped
+     * earlier keeps its contents.
+     * @param records : RECORD bytes per commit, parents first.
+     */
+    private static void write(byte[] records) {
+        int n = records.length / RECORD;
+        int[] order = sortById(ByteBuffer.wrap(records), n);
+        int[] fanout = new int[256];
+        for (int pos : order) {
+            fanout[records[pos * RECORD] & 0xFF] += 1;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(SORTED + n * Integer.BYTES
+                + records.length);
+        buf.put(new Encoder(KIND).toByteArray());
+        buf.putInt(n);
+        int total = 0;
+        for (int b = 0; b < fanout.length; b += 1) {
+            total += fanout[b];
+            buf.putInt(total);
+        }
+        for (int pos : order) {
+            buf.putInt(pos);
+        }
+        buf.put(records);
+        try {
+            File tmp = File.createTempFile("graph", ".tmp",
+                    GRAPH_FILE.getParentFile());
+            Files.write(tmp.toPath(), buf.array());
+            Files.move(tmp.toPath(), GRAPH_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * order the N records in RECORDS by hash.  They are sorted as
+     * longs holding the first four bytes of the hash above the
+     * position, and the few runs sharing those bytes are then put in
+     * order by whole hashes.
+     * @param records : RECORD bytes per commit.
+     * @param n : number of records.
+     * @return positions in the order of their hashes.
+     */
+    private static int[] sortById(ByteBuffer records, int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            int prefix = records.getInt(i * RECORD) ^ Integer.MIN_VALUE;
+            keys[i] = ((long) prefix << Integer.SIZE) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        byte[] raw = new byte[Encoder.ID_BYTES];
+        for (int k = 0; k < n; k += 1) {
+            int pos = (int) keys[k];
+            int j = k;
+            if (k > 0 && keys[k - 1] >>> Integer.SIZE
+                    == keys[k] >>> Integer.SIZE) {
+                records.get(pos * RECORD, raw);
+                while (j > 0 && keys[j - 1] >>> Integer.SIZE
+                        == keys[k] >>> Integer.SIZE
+                        && compare(records, order[j - 1] * RECORD, raw) > 0) {
+                    order[j] = order[j - 1];
+                    j -= 1;
+                }
+            }
+            order[j] = pos;
+        }
+        return order;
+    }
+
+    /**
+     * build the graph file from every commit in the object store.
+     */
+    static void rebuild() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : ObjectStore.list(Commit.KIND)) {
+            commits.put(id, Commit.fromFile(id));
+        }
+        HashMap<String, Integer> pos = new HashMap<>();
+        ArrayList<Commit> order = new ArrayList<>();
+        ArrayDeque<Commit> stack = new ArrayDeque<>();
+        for (Commit root : commits.values()) {
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Commit c = stack.peek();
+                if (pos.containsKey(c.hash())) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (String q : new String[] {c.getParentId(),
+                                              c.getMergeParentId()}) {
+                    if (q != null && !pos.containsKey(q)) {
+                        stack.push(commits.get(q));
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    pos.put(c.hash(), order.size());
+                    order.add(c);
+                }
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(order.size() * RECORD);
+        int[] gens = new int[order.size()];
+        for (int i = 0; i < order.size(); i += 1) {
+            Commit c = order.get(i);
+            int p = c.getParentId() == null ? -1 : pos.get(c.getParentId());
+            int mp = c.getMergeParentId() == null ? -1
+                    : pos.get(c.getMergeParentId());
+            gens[i] = 1 + Math.max(p < 0 ? 0 : gens[p], mp < 0 ? 0 : gens[mp]);
+            buf.put(record(c.hash(), p, mp, gens[i],
+                    c.getTime().toInstant().toEpochMilli()));
+        }
+        write(buf.array());
+        Reachability.clear();
+    }
+
+    /**
+     * get the number of commits in the graph.
+     * @return int
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * find the position of commit ID.
+     * @param id : commit hash.
+     * @return position, or -1 if ID is not in the graph.
+     */
+    int position(String id) {
+        return find(map, id);
+    }
+
+    /**
+     * get the hash of the commit at POS.
+     * @param pos : position.
+     * @return 40 hex digits.
+     */
+    String id(int pos) {
+        byte[] raw = new byte[Encoder.ID_BYTES];
+        map.get(records + pos * RECORD, raw);
+        return Sha1.hex(raw);
+    }
+
+    /**
+     * get the parent of the commit at POS.
+     * @param pos : position.
+     * @return position, or -1.
+     */
+    int parent(int pos) {
+        return map.getInt(records + pos * RECORD + Encoder.ID_BYTES);
+    }
+
+    /**
+     * get the merge parent of the commit at POS.
+     * @param pos : position.
+     * @return position, or -1.
+     */
+    int mergeParent(int pos) {
+        return map.getInt(records + pos * RECORD + Encoder.ID_BYTES
+                + Integer.BYTES);
+    }
+
+    /**
+     * get the generation number of the commit at POS.
+     * @param pos : position.
+     * @return int
+     */
+    private int generation(int pos) {
+        return map.getInt(records + pos * RECORD + Encoder.ID_BYTES
+                + 2 * Integer.BYTES);
+    }
+
+    /**
+     * get the time of the commit at POS.
+     * @param pos : position.
+     * @return milliseconds since the epoch.
+     */
+    long time(int pos) {
+        return map.getLong(records + pos * RECORD + Encoder.ID_BYTES
+                + 3 * Integer.BYTES);
+    }
+
+    /**
+     * get the raw hash of the commit at POS.
+     * @param pos : position.
+     * @return a read-only view of Encoder.ID_BYTES bytes.
+     */
+    ByteBuffer rawId(int pos) {
+        return map.slice(records + pos * RECORD, Encoder.ID_BYTES)
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * find a best common ancestor of the commits at A and B: a common
+     * ancestor that is not an ancestor of any other common ancestor.
+     * Commits are visited in decreasing generation order, so the first
+     * one reached from both sides has the largest generation number of
+     * all common ancestors and so is a best one.  Among several
+     * candidates with that generation (criss-cross histories) the
+     * newest wins.
+     * @param a : position.
+     * @param b : position.
+     * @return position, or -1 if there is no common ancestor.
+     */
+    int mergeBase(int a, int b) {
+        final int fromA = 1;
+        final int fromB = 2;
+        byte[] flags = new byte[size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) ->
+                generation(x) != generation(y)
+                ? Integer.compare(generation(y), generation(x))
+                : Long.compare(time(y), time(x)));
+        flags[a] |= fromA;
+        flags[b] |= fromB;
+        queue.add(a);
+        if (b != a) {
+            queue.add(b);
+        }
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            if (flags[c] == (fromA | fromB)) {
+                return c;
+            }
+            for (int q : new int[] {parent(c), mergeParent(c)}) {
+                if (q >= 0 && (flags[q] | flags[c]) != flags[q]) {
+                    if (flags[q] == 0) {
+                        queue.add(q);
+                    }
+                    flags[q] |= flags[c];
+                }
+            }
+        }
+        return -1;
+    }
+}
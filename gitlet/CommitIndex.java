@@ -0,0 +1,222 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A sorted index of all commit hashes, for resolving abbreviated ids
+ *  in O(log n) without listing the commit store.  The index is
+ *  commit-index.txt, an Encoder header followed by the raw 20-byte
+ *  hashes in ascending order.  New commits are appended to
+ *  commit-index-new.txt, which is merged into the sorted file once it
+ *  holds MERGE_AT hashes.
+ *  @author Michelle Wu
+ */
+class CommitIndex {
+
+    /** type tag of the sorted index. */
+    private static final char KIND = 'x';
+
+    /** Length of the Encoder header. */
+    private static final int HEADER = 4;
+
+    /** Number of appended hashes that triggers a merge. */
+    private static final int MERGE_AT = 1024;
+
+    /** Main metadata folder. /gitlet/ in file directory. */
+    private static final File GITLET_FOLDER =
+            new File(System.getProperty("user.dir"), ".gitlet");
+
+    /** The sorted index. */
+    private static final File INDEX_FILE =
+            new File(GITLET_FOLDER, "commit-index.txt");
+
+    /** Hashes added since the last merge, in the order added. */
+    private static final File JOURNAL_FILE =
+            new File(GITLET_FOLDER, "commit-index-new.txt");
+
+    /** Sorted raw hashes, after HEADER bytes of header. */
+    private final byte[] sorted;
+
+    /** Number of hashes in sorted. */
+    private final int count;
+
+    /** Hashes in the journal. */
+    private final List<String> journal;
+
+    /**
+     * an index over SORTED and JOURNAL.
+     * @param sorted : encoded sorted index.
+     * @param journal : hashes added since.
+     */
+    private CommitIndex(byte[] sorted, List<String> journal) {
+        this.sorted = sorted;
+        this.count = (sorted.length - HEADER) / Encoder.ID_BYTES;
+        this.journal = journal;
+    }
+
+    /**
+     * read the index, building it from the commit store if there is
+     * none yet.
+     * @return CommitIndex
+     */
+    static CommitIndex read() {
+        if (!INDEX_FILE.exists()) {
+            rebuild();
+        }
+        byte[] data = Utils.readContents(INDEX_FILE);
+        new Decoder(data, KIND);
+        return new CommitIndex(data, readJournal());
+    }
+
+    /**
+     * record a new commit.
+     * @param id : hash of the commit.
+     */
+    static void add(String id) {
+        if (!INDEX_FILE.exists()) {
+            rebuild();
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(JOURNAL_FILE, true)) {
+            out.write(Encoder.rawId(id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (JOURNAL_FILE.length() >= (long) MERGE_AT * Encoder.ID_BYTES) {
+            merge();
+        }
+    }
+
+    /**
+     * find the commit whose hash starts with PREFIX.
+     * @param prefix : abbreviated or full commit hash.
+     * @return the full hash, or null if no commit matches.
+     * @throws GitletException if more than one commit matches.
+     */
+    String resolve(String prefix) {
+        String match = null;
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo < count && comparePrefix(lo, prefix) == 0) {
+            match = hexAt(lo);
+            if (lo + 1 < count && comparePrefix(lo + 1, prefix) == 0) {
+                throw ambiguous(prefix);
+            }
+        }
+        for (String id : journal) {
+            if (id.startsWith(prefix) && !id.equals(match)) {
+                if (match != null) {
+                    throw ambiguous(prefix);
+                }
+                match = id;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * compare the first PREFIX.length() hex digits of the hash at
+     * position POS with PREFIX.
+     * @param pos : position in the sorted index.
+     * @param prefix : hex digits.
+     * @return negative, zero or positive.
+     */
+    private int comparePrefix(int pos, String prefix) {
+        int start = HEADER + pos * Encoder.ID_BYTES;
+        int n = Math.min(prefix.length(), Utils.UID_LENGTH);
+        for (int k = 0; k < n; k += 1) {
+            int b = sorted[start + k / 2] & 0xFF;
+            int digit = k % 2 == 0 ? b >>> 4 : b & 0xF;
+            int diff = digit - Character.digit(prefix.charAt(k), 16);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return prefix.length() > Utils.UID_LENGTH ? -1 : 0;
+    }
+
+    /**
+     * get the hash at position POS.
+     * @param pos : position in the sorted index.
+     * @return 40 hex digits.
+     */
+    private String hexAt(int pos) {
+        int start = HEADER + pos * Encoder.ID_BYTES;
+        return Sha1.hex(sorted, start, Encoder.ID_BYTES);
+    }
+
+    /**
+     * the error for an ambiguous PREFIX.
+     * @param prefix : abbreviated hash.
+     * @return GitletException
+     */
+    private static GitletException ambiguous(String prefix) {
+        return new GitletException("Ambiguous commit id " + prefix + ".");
+    }
+
+    /**
+     * read the journal.
+     * @return hashes in the order added.
+     */
+    private static List<String> readJournal() {
+        ArrayList<String> ids = new ArrayList<>();
+        if (JOURNAL_FILE.exists()) {
+            byte[] data = Utils.readContents(JOURNAL_FILE);
+            for (int i = 0; i + Encoder.ID_BYTES <= data.length;
+                 i += Encoder.ID_BYTES) {
+                ids.add(Sha1.hex(data, i, Encoder.ID_BYTES));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * merge the journal into the sorted index.
+     */
+    private static void merge() {
+        CommitIndex old = read();
+        TreeSet<String> ids = new TreeSet<>(old.journal);
+        for (int i = 0; i < old.count; i += 1) {
+            ids.add(old.hexAt(i));
+        }
+        write(ids);
+    }
+
+    /**
+     * build the index from the commits in the object store.
+     */
+    private static void rebuild() {
+        write(new TreeSet<>(ObjectStore.list(Commit.KIND)));
+    }
+
+    /**
+     * replace the index with IDS and empty the journal.
+     * @param ids : all commit hashes, sorted.
+     */
+    private static void write(TreeSet<String> ids) {
+        byte[] header = new Encoder(KIND).toByteArray();
+        byte[] data = new byte[header.length + ids.size() * Encoder.ID_BYTES];
+        System.arraycopy(header, 0, data, 0, header.length);
+        int pos = header.length;
+        for (String id : ids) {
+            System.arraycopy(Encoder.rawId(id), 0, data, pos,
+                    Encoder.ID_BYTES);
+            pos += Encoder.ID_BYTES;
+        }
+        Utils.writeContents(INDEX_FILE, (Object) data);
+        JOURNAL_FILE.delete();
+    }
+}
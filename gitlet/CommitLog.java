@@ -0,0 +1,429 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** An append-only log of commit metadata, so that global-log and find
+ *  never have to read commit objects.  commit-log.txt holds, after an
+ *  Encoder header, one fixed-size record per commit in the order made:
+ *  the raw hash, the time in epoch seconds, the zone offset in seconds
+ *  and the offset and length of the message in commit-messages.txt,
+ *  which holds the messages back to back.  An inverted index from
+ *  message words to record numbers, commit-words.txt, is brought up to
+ *  date whenever a search needs it.  Both files are mapped rather than
+ *  read, so a command touches only the records and messages it uses.
+ *  @author Michelle Wu
+ */
+class CommitLog {
+
+    /** Search for messages equal to the query. */
+    static final String EXACT = "--exact";
+
+    /** Search for messages starting with the query. */
+    static final String PREFIX = "--prefix";
+
+    /** Search for messages containing the query. */
+    static final String SUBSTRING = "--substring";
+
+    /** type tag of the metadata log. */
+    private static final char KIND = 'l';
+
+    /** type tag of the word index. */
+    private static final char WORDS_KIND = 'w';
+
+    /** Length of the Encoder header. */
+    private static final int HEADER = 4;
+
+    /** Length of one record. */
+    private static final int RECORD = Encoder.ID_BYTES + Long.BYTES
+            + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    /** Main metadata folder. /gitlet/ in file directory. */
+    private static final File GITLET_FOLDER =
+            new File(System.getProperty("user.dir"), ".gitlet");
+
+    /** The metadata records. */
+    private static final File LOG_FILE =
+            new File(GITLET_FOLDER, "commit-log.txt");
+
+    /** The commit messages. */
+    private static final File MESSAGE_FILE =
+            new File(GITLET_FOLDER, "commit-messages.txt");
+
+    /** The word index. */
+    private static final File WORDS_FILE =
+            new File(GITLET_FOLDER, "commit-words.txt");
+
+    /** Mapped contents of LOG_FILE. */
+    private final ByteBuffer records;
+
+    /** Mapped contents of MESSAGE_FILE. */
+    private final ByteBuffer messages;
+
+    /** Number of records. */
+    private final int count;
+
+    /**
+     * a log over RECORDS and MESSAGES.
+     * @param records : contents of the metadata log.
+     * @param messages : contents of the message file.
+     */
+    private CommitLog(ByteBuffer records, ByteBuffer messages) {
+        byte[] header = new byte[Math.min(HEADER, records.capacity())];
+        records.get(0, header);
+        new Decoder(header, KIND);
+        this.records = records;
+        this.messages = messages;
+        this.count = (records.capacity() - HEADER) / RECORD;
+    }
+
+    /**
+     * read the log, building it from the commit store if there is none.
+     * @return CommitLog
+     */
+    static CommitLog read() {
+        if (!LOG_FILE.exists()) {
+            rebuild();
+        }
+        return new CommitLog(map(LOG_FILE), map(MESSAGE_FILE));
+    }
+
+    /**
+     * map F for reading.
+     * @param f : plain file.
+     * @return read-only view of its contents.
+     */
+    private static ByteBuffer map(File f) {
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * append commit C to the log.
+     * @param c : new commit.
+     */
+    static void add(Commit c) {
+        if (!LOG_FILE.exists()) {
+            rebuild();
+            return;
+        }
+        byte[] msg = c.getLog().getBytes(StandardCharsets.UTF_8);
+        long offset = MESSAGE_FILE.length();
+        try (OutputStream out = new FileOutputStream(MESSAGE_FILE, true)) {
+            out.write(msg);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (OutputStream out = new FileOutputStream(LOG_FILE, true)) {
+            out.write(record(c, offset, msg.length));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * encode the record of C.
+     * @param c : commit.
+     * @param offset : where its message starts.
+     * @param length : length of its message in bytes.
+     * @return bytes.
+     */
+    private static byte[] record(Commit c, long offset, int length) {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD);
+        buf.put(Encoder.rawId(c.hash()))
+                .putLong(c.getTime().toEpochSecond())
+                .putInt(c.getTime().getOffset().getTotalSeconds())
+                .putLong(offset).putInt(length);
+        return buf.array();
+    }
+
+    /**
+     * build the log from every commit in the object store, oldest
+     * first, and drop the word index.
+     */
+    static void rebuild() {
+        ArrayList<Commit> commits = new ArrayList<>();
+        for (String id : ObjectStore.list(Commit.KIND)) {
+            commits.add(Commit.fromFile(id));
+        }
+        commits.sort(Comparator.comparing(Commit::getTime)
+                .thenComparing(Commit::hash));
+        byte[] header = new Encoder(KIND).toByteArray();
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + commits.size() * RECORD);
+        buf.put(header);
+        StringBuilder all = new StringBuilder();
+        long offset = 0;
+        for (Commit c : commits) {
+            int length = c.getLog().getBytes(StandardCharsets.UTF_8).length;
+            buf.put(record(c, offset, length));
+            all.append(c.getLog());
+            offset += length;
+        }
+        Utils.writeContents(MESSAGE_FILE, all.toString());
+        Utils.writeContents(LOG_FILE, (Object) buf.array());
+        WORDS_FILE.delete();
+    }
+
+    /**
+     * get the number of commits in the log.
+     * @return int
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * get the hash of commit I.
+     * @param i : record number.
+     * @return 40 hex digits.
+     */
+    String id(int i) {
+        byte[] raw = new byte[Encoder.ID_BYTES];
+        records.get(HEADER + i * RECORD, raw);
+        return Sha1.hex(raw);
+    }
+
+    /**
+     * find the record of a commit.  Records are in the order the
+     * commits were made, so they are binary-searched by time and then
+     * the records made in the same second are compared by hash.
+     * @param id : raw hash of the commit.
+     * @param millis : its time in milliseconds since the epoch.
+     * @return record number, or -1 if it is not found, as when the
+     *         clock was turned back between commits.
+     */
+    int recordOf(ByteBuffer id, long millis) {
+        long seconds = Math.floorDiv(millis, 1000);
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (seconds(mid) < seconds) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < count && seconds(i) == seconds; i += 1) {
+            if (records.slice(HEADER + i * RECORD, Encoder.ID_BYTES)
+                    .equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * get the time of commit I.
+     * @param i : record number.
+     * @return seconds since the epoch.
+     */
+    private long seconds(int i) {
+        return records.getLong(HEADER + i * RECORD + Encoder.ID_BYTES);
+    }
+
+    /**
+     * get the time of commit I, in the zone it was made in.
+     * @param i : record number.
+     * @return ZonedDateTime
+     */
+    ZonedDateTime time(int i) {
+        int start = HEADER + i * RECORD + Encoder.ID_BYTES;
+        return ZonedDateTime.ofInstant(
+                Instant.ofEpochSecond(records.getLong(start)),
+                ZoneOffset.ofTotalSeconds(
+                        records.getInt(start + Long.BYTES)));
+    }
+
+    /**
+     * get the message of commit I.
+     * @param i : record number.
+     * @return String
+     */
+    String message(int i) {
+        int start = HEADER + i * RECORD + Encoder.ID_BYTES + Long.BYTES
+                + Integer.BYTES;
+        byte[] msg = new byte[records.getInt(start + Long.BYTES)];
+        messages.get((int) records.getLong(start), msg);
+        return new String(msg, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * find the commits whose messages match QUERY.  The word index
+     * narrows the candidates to commits having every word of QUERY
+     * that must appear whole, and to those having a word beginning
+     * with the last word of QUERY if it may be cut short; each
+     * candidate is then checked against its message.
+     * @param query : text to look for.
+     * @param mode : EXACT, PREFIX or SUBSTRING.
+     * @return matching record numbers, in log order.
+     */
+    List<Integer> find(String query, String mode) {
+        String[] words = words(query);
+        boolean cutStart = mode.equals(SUBSTRING) && startsInWord(query);
+        boolean cutEnd = !mode.equals(EXACT) && endsInWord(query);
+        TreeMap<String, int[]> index = words.length == 0 ? null : index();
+        int[] candidates = null;
+        for (int w = cutStart ? 1 : 0; w < words.length; w += 1) {
+            int[] matches;
+            if (w == words.length - 1 && cutEnd) {
+                TreeSet<Integer> union = new TreeSet<>();
+                for (int[] p : index.subMap(words[w], words[w] + '\uffff')
+                        .values()) {
+                    for (int i : p) {
+                        union.add(i);
+                    }
+                }
+                matches = union.stream().mapToInt(i -> i).toArray();
+            } else {
+                matches = index.getOrDefault(words[w], new int[0]);
+            }
+            candidates = candidates == null ? matches
+                    : intersect(candidates, matches);
+        }
+        ArrayList<Integer> result = new ArrayList<>();
+        int n = candidates == null ? count : candidates.length;
+        for (int k = 0; k < n; k += 1) {
+            int i = candidates == null ? k : candidates[k];
+            String msg = message(i);
+            if (mode.equals(EXACT) ? msg.equals(query)
+                    : mode.equals(PREFIX) ? msg.startsWith(query)
+                    : msg.contains(query)) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * read the word index and add any commits logged since it was
+     * last saved.
+     * @return sorted record numbers by word.
+     */
+    private TreeMap<String, int[]> index() {
+        TreeMap<String, int[]> index = new TreeMap<>();
+        int covered = 0;
+        if (WORDS_FILE.exists()) {
+            Decoder d = new Decoder(Utils.readContents(WORDS_FILE),
+                    WORDS_KIND);
+            covered = d.readInt();
+            String word = "";
+            for (int n = d.readInt(); n > 0; n -= 1) {
+                word = d.readKey(word);
+                int[] postings = new int[d.readInt()];
+                int prev = 0;
+                for (int j = 0; j < postings.length; j += 1) {
+                    prev += d.readInt();
+                    postings[j] = prev;
+                }
+                index.put(word, postings);
+            }
+        }
+        if (covered == count) {
+            return index;
+        }
+        TreeMap<String, List<Integer>> added = new TreeMap<>();
+        for (int i = covered; i < count; i += 1) {
+            for (String word : words(message(i))) {
+                added.computeIfAbsent(word, k -> new ArrayList<>()).add(i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : added.entrySet()) {
+            int[] old = index.getOrDefault(entry.getKey(), new int[0]);
+            int[] postings = Arrays.copyOf(old,
+                    old.length + entry.getValue().size());
+            for (int j = 0; j < entry.getValue().size(); j += 1) {
+                postings[old.length + j] = entry.getValue().get(j);
+            }
+            index.put(entry.getKey(), postings);
+        }
+        Encoder e = new Encoder(WORDS_KIND);
+        e.writeVarint(count);
+        e.writeVarint(index.size());
+        String prev = "";
+        for (Map.Entry<String, int[]> entry : index.entrySet()) {
+            e.writeKey(prev, entry.getKey());
+            prev = entry.getKey();
+            e.writeVarint(entry.getValue().length);
+            int last = 0;
+            for (int i : entry.getValue()) {
+                e.writeVarint(i - last);
+                last = i;
+            }
+        }
+        Utils.writeContents(WORDS_FILE, (Object) e.toByteArray());
+        return index;
+    }
+
+    /**
+     * split S into its distinct lower-case words.
+     * @param s : text.
+     * @return words in order of first appearance.
+     */
+    private static String[] words(String s) {
+        return Arrays.stream(s.toLowerCase().split("[^\\p{L}\\p{N}]+"))
+                .filter(w -> !w.isEmpty()).distinct().toArray(String[]::new);
+    }
+
+    /**
+     * check whether S starts in the middle of a word.
+     * @param s : text.
+     * @return boolean
+     */
+    private static boolean startsInWord(String s) {
+        return !s.isEmpty() && Character.isLetterOrDigit(s.charAt(0));
+    }
+
+    /**
+     * check whether S ends in the middle of a word.
+     * @param s : text.
+     * @return boolean
+     */
+    private static boolean endsInWord(String s) {
+        return !s.isEmpty()
+                && Character.isLetterOrDigit(s.charAt(s.length() - 1));
+    }
+
+    /**
+     * intersect two ascending lists.
+     * @param a : sorted record numbers.
+     * @param b : sorted record numbers.
+     * @return the record numbers in both.
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n++] = a[i];
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/** Repository settings, kept as key=value lines in .gitlet/config.txt.
+ *  @author Michelle Wu
+ */
+class Config {
+
+    /** zlib level (0-9, or -1 for the default) of stored objects. */
+    static final String COMPRESSION = "compression.level";
+
+    /** Number of threads that write files during checkout and reset. */
+    static final String CHECKOUT_THREADS = "checkout.threads";
+
+    /** Where the settings are saved. */
+    private static final File CONFIG_FILE =
+            new File(System.getProperty("user.dir"), ".gitlet/config.txt");
+
+    /** Settings read so far; null until first use. */
+    private static Properties settings;
+
+    /**
+     * get the settings, reading them on first use.
+     * @return Properties
+     */
+    private static synchronized Properties settings() {
+        if (settings == null) {
+            settings = new Properties();
+            if (CONFIG_FILE.exists()) {
+                try (InputStream in = new FileInputStream(CONFIG_FILE)) {
+                    settings.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * forget the settings read so far, so they are read again.
+     */
+    static synchronized void reload() {
+        settings = null;
+    }
+
+    /**
+     * get a setting.
+     * @param key : name of the setting.
+     * @return value, or null if unset.
+     */
+    static String get(String key) {
+        return settings().getProperty(key);
+    }
+
+    /**
+     * get an integer setting.
+     * @param key : name of the setting.
+     * @param def : value if unset.
+     * @return int
+     */
+    static int getInt(String key, int def) {
+        String value = get(key);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            throw new GitletException("Bad value for " + key + ": " + value);
+        }
+    }
+
+    /**
+     * change a setting and save the settings.
+     * @param key : name of the setting.
+     * @param value : new value.
+     */
+    static void set(String key, String value) {
+        Properties p = settings();
+        p.setProperty(key, value);
+        try (OutputStream out = new FileOutputStream(CONFIG_FILE)) {
+            p.store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+
+/** Reads objects written by Encoder.  Throws IllegalArgumentException
+ *  if the data is truncated or was not written by Encoder.
+ *  @author Michelle Wu
+ */
+class Decoder {
+
+    /** Hex digits used to format ids. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The encoded bytes. */
+    private final byte[] data;
+
+    /** Position of the next byte to read. */
+    private int pos;
+
+    /** A decoder for DATA, which must hold an object of type KIND. */
+    Decoder(byte[] data, char kind) {
+        this.data = data;
+        if (data.length < 4 || data[0] != Encoder.MAGIC[0]
+                || data[1] != Encoder.MAGIC[1] || data[2] != kind) {
+            throw new IllegalArgumentException("not a gitlet object of type "
+                    + kind);
+        }
+        if (data[3] != Encoder.VERSION) {
+            throw new IllegalArgumentException("unsupported format version "
+                    + data[3]);
+        }
+        pos = 4;
+    }
+
+    /** Return true iff there are bytes left to read. */
+    boolean hasMore() {
+        return pos < data.length;
+    }
+
+    /** Return the next byte. */
+    private int readByte() {
+        if (pos >= data.length) {
+            throw new IllegalArgumentException("truncated gitlet object");
+        }
+        return data[pos++] & 0xFF;
+    }
+
+    /** Return the next long written by Encoder.writeLong. */
+    long readLong() {
+        long result = 0;
+        for (int i = 0; i < Long.BYTES; i += 1) {
+            result = result << Byte.SIZE | readByte();
+        }
+        return result;
+    }
+
+    /** Return the next varint. */
+    long readVarint() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /** Return the next varint, which must fit in an int. */
+    int readInt() {
+        long v = readVarint();
+        if (v > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("length out of range");
+        }
+        return (int) v;
+    }
+
+    /** Return the next string. */
+    String readString() {
+        int len = readInt();
+        if (len > data.length - pos) {
+            throw new IllegalArgumentException("truncated gitlet object");
+        }
+        String s = new String(data, pos, len, StandardCharsets.UTF_8);
+        pos += len;
+        return s;
+    }
+
+    /** Return the next raw id as 40 hex digits. */
+    String readId() {
+        char[] hex = new char[Utils.UID_LENGTH];
+        for (int i = 0; i < hex.length; i += 2) {
+            int b = readByte();
+            hex[i] = HEX[b >>> 4];
+            hex[i + 1] = HEX[b & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /** Return the next raw id. */
+    ObjectId readObjectId() {
+        if (Encoder.ID_BYTES > data.length - pos) {
+            throw new IllegalArgumentException("truncated gitlet object");
+        }
+        ObjectId id = ObjectId.of(data, pos);
+        pos += Encoder.ID_BYTES;
+        return id;
+    }
+
+    /** Return the id written by Encoder.writeOptionalId, or null. */
+    String readOptionalId() {
+        return readByte() == 0 ? null : readId();
+    }
+
+    /** Return the map written by Encoder.writeIdMap. */
+    TreeMap<String, String> readIdMap() {
+        TreeMap<String, String> map = new TreeMap<>();
+        int size = readInt();
+        String prev = "";
+        for (int i = 0; i < size; i += 1) {
+            String key = readKey(prev);
+            map.put(key, readId());
+            prev = key;
+        }
+        return map;
+    }
+
+    /** Return the key written by Encoder.writeKey after PREV. */
+    String readKey(String prev) {
+        int shared = readInt();
+        if (shared > prev.length()) {
+            throw new IllegalArgumentException("malformed key");
+        }
+        return prev.substring(0, shared) + readString();
+    }
+}
@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/** Binary deltas between two versions of an object.  A delta starts
+ *  with the varint lengths of the base and the target, followed by
+ *  instructions: INSERT (a varint count and that many literal bytes)
+ *  or COPY (a varint offset into the base and a varint count).
+ *  Matches are found by indexing the base in BLOCK-byte blocks and
+ *  looking up a rolling hash of the target.
+ *  @author Michelle Wu
+ */
+class Delta {
+
+    /** Instruction tag: literal bytes follow. */
+    private static final int INSERT = 0;
+
+    /** Instruction tag: bytes are copied from the base. */
+    private static final int COPY = 1;
+
+    /** Length of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 0x01000193;
+
+    /** PRIME to the power BLOCK, for removing a byte from the hash. */
+    private static final int PRIME_POW;
+
+    static {
+        int p = 1;
+        for (int i = 0; i < BLOCK; i += 1) {
+            p *= PRIME;
+        }
+        PRIME_POW = p;
+    }
+
+    /**
+     * compute a delta that turns BASE into TARGET.
+     * @param base : old version.
+     * @param target : new version.
+     * @return delta as read by apply.
+     */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        int blocks = base.length / BLOCK;
+        int mask = Integer.highestOneBit(Math.max(1, blocks * 2)) * 2 - 1;
+        int[] table = new int[mask + 1];
+        Arrays.fill(table, -1);
+        for (int b = blocks - 1; b >= 0; b -= 1) {
+            table[hash(base, b * BLOCK) & mask] = b * BLOCK;
+        }
+
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int cand = blocks == 0 ? -1 : table[h & mask];
+            int len = cand < 0 ? 0 : matchLength(base, cand, target, i);
+            if (len >= BLOCK) {
+                writeInsert(out, target, i - pending, pending);
+                pending = 0;
+                writeVarint(out, COPY);
+                writeVarint(out, cand);
+                writeVarint(out, len);
+                i += len;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = h * PRIME - (target[i] & 0xFF) * PRIME_POW
+                            + (target[i + BLOCK] & 0xFF);
+                }
+                pending += 1;
+                i += 1;
+            }
+        }
+        pending += target.length - i;
+        writeInsert(out, target, target.length - pending, pending);
+        return out.toByteArray();
+    }
+
+    /**
+     * rebuild the target of DELTA from BASE.
+     * @param base : old version.
+     * @param delta : delta made by create.
+     * @return new version.
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta does not match base");
+        }
+        byte[] result = new byte[(int) readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = (int) readVarint(delta, pos);
+            if (op == INSERT) {
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, len);
+                pos[0] += len;
+                n += len;
+            } else if (op == COPY) {
+                int off = (int) readVarint(delta, pos);
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(base, off, result, n, len);
+                n += len;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (n != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /**
+     * hash BLOCK bytes of DATA starting at START.
+     * @param data : bytes.
+     * @param start : first byte.
+     * @return int
+     */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = h * PRIME + (data[k] & 0xFF);
+        }
+        return h;
+    }
+
+    /**
+     * count the bytes that match from BASE[B] and TARGET[T] onwards.
+     * @param base : old version.
+     * @param b : start in BASE.
+     * @param target : new version.
+     * @param t : start in TARGET.
+     * @return length of the match.
+     */
+    private static int matchLength(byte[] base, int b, byte[] target,
+                                   int t) {
+        int len = 0;
+        while (b + len < base.length && t + len < target.length
+                && base[b + len] == target[t + len]) {
+            len += 1;
+        }
+        return len;
+    }
+
+    /**
+     * write an INSERT of LEN bytes of DATA from START, if LEN > 0.
+     * @param out : delta being built.
+     * @param data : source of the literal bytes.
+     * @param start : first byte.
+     * @param len : number of bytes.
+     */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data,
+                                    int start, int len) {
+        if (len > 0) {
+            writeVarint(out, INSERT);
+            writeVarint(out, len);
+            out.write(data, start, len);
+        }
+    }
+
+    /**
+     * write non-negative V to OUT as a varint.
+     * @param out : output.
+     * @param v : value.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /**
+     * read a varint from DATA at POS[0], advancing POS[0].
+     * @param data : input.
+     * @param pos : one-element array holding the position.
+     * @return value.
+     */
+    private static long readVarint(byte[] data, int[] pos) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = data[pos[0]++] & 0xFF;
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("corrupt delta");
+    }
+}
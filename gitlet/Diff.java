@@ -6,15 +6,13 @@ import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
 
-import static java.lang.Math.max;
-
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
@@ -22,13 +20,30 @@ import static java.lang.Math.max;
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** Algorithm choice for setAlgorithm: Myers' minimal diff. */
+    public static final int MYERS = 0;
+
+    /** Algorithm choice for setAlgorithm: patience diff, which anchors
+     *  on lines occurring exactly once in both sequences and so tends to
+     *  line up functions and blocks the way a reader would. */
+    public static final int PATIENCE = 1;
+
+    /** Set the algorithm used for subsequent comparisons to ALGORITHM,
+     *  one of MYERS (the default) and PATIENCE. */
+    public void setAlgorithm(int algorithm) {
+        if (algorithm != MYERS && algorithm != PATIENCE) {
+            throw new IllegalArgumentException("unknown diff algorithm");
+        }
+        _algorithm = algorithm;
+        _common = null;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        intern();
     }
 
     /** Set the sequences currently being compared to the contents
@@ -48,8 +63,7 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
-        _lls = null;
-        _todo = null;
+        intern();
     }
 
     /** Return the first of the current sequences. */
@@ -76,76 +90,34 @@ public class Diff {
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
-        if (k1 == 0 || k2 == 0
-            || k1 > _lines1.size() || k2 > _lines2.size()) {
-            return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
-            }
+        k1 = Math.min(k1, _ids1.length);
+        k2 = Math.min(k2, _ids2.length);
+        if (k1 == _ids1.length && k2 == _ids2.length
+            && _algorithm == MYERS) {
+            return lls();
         }
-        return _lls[k1][k2];
+        return (k1 + k2 - distance(k1, k2)) / 2;
     }
 
     /** Return the length of the longest common subsequence of the current
      *  data subsequences. */
     public int lls() {
-        checkData();
-        return lls(_lines1.size(), _lines2.size());
+        if (_algorithm != MYERS) {
+            return lls(_ids1.length, _ids2.length);
+        }
+        int[] common = commonSubsequence();
+        int result = 0;
+        for (int k = 2; k < common.length; k += 3) {
+            result += common[k];
+        }
+        return result;
     }
 
     /** Return true iff the sequences currently being compared have identical
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return Arrays.equals(_ids1, _ids2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -166,30 +138,20 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
-            } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
-                }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
-            }
+        checkData();
+        if (_common == null) {
+            _runs = new int[3 * 16];
+            _nruns = 0;
+            int n = _ids1.length;
+            int m = _ids2.length;
+            _forward = new int[n + m + 5];
+            _backward = new int[n + m + 5];
+            compare(0, n, 0, m);
+            _forward = _backward = null;
+            _common = Arrays.copyOf(_runs, _nruns);
+            _runs = null;
         }
-        return toIntArr(resultList);
+        return _common.clone();
     }
 
     /** Return the edit that converts the first of the sequences being compared
@@ -232,45 +194,237 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
+    /** Replace each line of the current sequences by a small int, equal
+     *  lines getting equal ints, so that comparisons are cheap. */
+    private void intern() {
+        HashMap<String, Integer> ids = new HashMap<>();
+        _ids1 = new int[_lines1.size()];
+        _ids2 = new int[_lines2.size()];
+        int k;
+        k = 0;
+        for (String line : _lines1) {
+            _ids1[k] = ids.computeIfAbsent(line, x -> ids.size());
+            k += 1;
+        }
+        k = 0;
+        for (String line : _lines2) {
+            _ids2[k] = ids.computeIfAbsent(line, x -> ids.size());
+            k += 1;
+        }
+        _common = null;
     }
 
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
+    /** Append to _runs a longest common subsequence of items [LO1 .. HI1)
+     *  of the first sequence and [LO2 .. HI2) of the second.  This is
+     *  Myers' linear-space refinement: strip the common prefix and
+     *  suffix, find the middle snake of an optimal edit path, and
+     *  recurse on either side of it. */
+    private void compare(int lo1, int hi1, int lo2, int hi2) {
+        int pre;
+        pre = 0;
+        while (lo1 + pre < hi1 && lo2 + pre < hi2
+               && _ids1[lo1 + pre] == _ids2[lo2 + pre]) {
+            pre += 1;
+        }
+        addRun(lo1, lo2, pre);
+        lo1 += pre; lo2 += pre;
+        int suf;
+        suf = 0;
+        while (hi1 - suf > lo1 && hi2 - suf > lo2
+               && _ids1[hi1 - suf - 1] == _ids2[hi2 - suf - 1]) {
+            suf += 1;
+        }
+        hi1 -= suf; hi2 -= suf;
+        if (lo1 < hi1 && lo2 < hi2
+            && (_algorithm != PATIENCE || !patience(lo1, hi1, lo2, hi2))) {
+            int[] snake = middleSnake(lo1, hi1, lo2, hi2);
+            compare(lo1, snake[0], lo2, snake[1]);
+            addRun(snake[0], snake[1], snake[2] - snake[0]);
+            compare(snake[2], hi1, snake[3], hi2);
+        }
+        addRun(hi1, hi2, suf);
     }
 
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
+    /** Append to _runs a common subsequence of items [LO1 .. HI1) and
+     *  [LO2 .. HI2) built around the longest increasing sequence of
+     *  lines that occur exactly once in each range, comparing the gaps
+     *  between those anchors recursively.  Return false, having done
+     *  nothing, if there are no such lines. */
+    private boolean patience(int lo1, int hi1, int lo2, int hi2) {
+        HashMap<Integer, int[]> seen = new HashMap<>();
+        for (int i = lo1; i < hi1; i += 1) {
+            int[] e = seen.computeIfAbsent(_ids1[i], x -> new int[4]);
+            e[0] += 1;
+            e[2] = i;
+        }
+        for (int i = lo2; i < hi2; i += 1) {
+            int[] e = seen.get(_ids2[i]);
+            if (e != null) {
+                e[1] += 1;
+                e[3] = i;
+            }
+        }
+        int[] unique = new int[hi2 - lo2];
+        int n;
+        n = 0;
+        for (int i = lo2; i < hi2; i += 1) {
+            int[] e = seen.get(_ids2[i]);
+            if (e != null && e[0] == 1 && e[1] == 1) {
+                unique[n] = e[2];
+                n += 1;
+            }
+        }
+        if (n == 0) {
+            return false;
+        }
+        int[] tops = new int[n];
+        int[] back = new int[n];
+        int piles;
+        piles = 0;
+        for (int k = 0; k < n; k += 1) {
+            int lo = 0, hi = piles;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (unique[tops[mid]] < unique[k]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            back[k] = lo == 0 ? -1 : tops[lo - 1];
+            tops[lo] = k;
+            if (lo == piles) {
+                piles += 1;
+            }
+        }
+        int[] anchors = new int[piles];
+        for (int k = tops[piles - 1], j = piles - 1; k >= 0; k = back[k]) {
+            anchors[j] = unique[k];
+            j -= 1;
+        }
+        int next1 = lo1, next2 = lo2;
+        for (int a1 : anchors) {
+            int a2 = seen.get(_ids1[a1])[3];
+            compare(next1, a1, next2, a2);
+            addRun(a1, a2, 1);
+            next1 = a1 + 1;
+            next2 = a2 + 1;
+        }
+        compare(next1, hi1, next2, hi2);
+        return true;
+    }
+
+    /** Return the middle snake of an optimal path through the edit graph
+     *  of items [LO1 .. HI1) and [LO2 .. HI2), which must neither be
+     *  empty nor share a first or last item, as {x, y, u, v}: the snake
+     *  runs from (x, y) to (u, v) in absolute positions. */
+    private int[] middleSnake(int lo1, int hi1, int lo2, int hi2) {
+        int n = hi1 - lo1, m = hi2 - lo2;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int off = (n + m + 1) / 2 + 1;
+        int[] vf = _forward, vb = _backward;
+        vf[off + 1] = 0;
+        vb[off + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])
+                    ? vf[off + k + 1] : vf[off + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && _ids1[lo1 + x] == _ids2[lo2 + y]) {
+                    x += 1; y += 1;
+                }
+                vf[off + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                    && x + vb[off + delta - k] >= n) {
+                    return new int[] { lo1 + x0, lo2 + y0, lo1 + x, lo2 + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && vb[off + k - 1] < vb[off + k + 1])
+                    ? vb[off + k + 1] : vb[off + k - 1] + 1;
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _ids1[hi1 - 1 - x] == _ids2[hi2 - 1 - y]) {
+                    x += 1; y += 1;
+                }
+                vb[off + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                    && x + vf[off + delta - k] >= n) {
+                    return new int[] { hi1 - x, hi2 - y, hi1 - x0, hi2 - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
     }
 
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
+    /** Record that the L items starting at I1 and I2 of the first and
+     *  second sequences match, joining this to the previous run if they
+     *  are adjacent. */
+    private void addRun(int i1, int i2, int L) {
+        if (L == 0) {
+            return;
+        }
+        if (_nruns > 0 && _runs[_nruns - 3] + _runs[_nruns - 1] == i1
+            && _runs[_nruns - 2] + _runs[_nruns - 1] == i2) {
+            _runs[_nruns - 1] += L;
+            return;
+        }
+        if (_nruns == _runs.length) {
+            _runs = Arrays.copyOf(_runs, 2 * _runs.length);
+        }
+        _runs[_nruns] = i1;
+        _runs[_nruns + 1] = i2;
+        _runs[_nruns + 2] = L;
+        _nruns += 3;
+    }
+
+    /** Return the number of insertions and deletions needed to turn the
+     *  first K1 items of the first sequence into the first K2 items of
+     *  the second, by Myers' greedy forward search. */
+    private int distance(int k1, int k2) {
+        int off = k1 + k2 + 1;
+        int[] v = new int[2 * off + 1];
+        for (int d = 0; d <= k1 + k2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[off + k - 1] < v[off + k + 1])
+                    ? v[off + k + 1] : v[off + k - 1] + 1;
+                int y = x - k;
+                while (x < k1 && y < k2 && _ids1[x] == _ids2[y]) {
+                    x += 1; y += 1;
+                }
+                v[off + k] = x;
+                if (x >= k1 && y >= k2) {
+                    return d;
+                }
+            }
+        }
+        throw new IllegalStateException("no edit path");
     }
 
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** The sequences being compared, each line replaced by an int that
+     *  identifies its contents. */
+    private int[] _ids1, _ids2;
+
+    /** The algorithm in use: MYERS or PATIENCE. */
+    private int _algorithm = MYERS;
+
+    /** The result of commonSubsequence, or null if not calculated. */
+    private int[] _common;
+
+    /** Matching runs found so far while computing _common, as triples in
+     *  the format of commonSubsequence, and the number of ints used. */
+    private int[] _runs;
+    /** Number of ints of _runs in use. */
+    private int _nruns;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** Furthest reaching forward and reverse paths by diagonal, used by
+     *  middleSnake. */
+    private int[] _forward, _backward;
 
 }
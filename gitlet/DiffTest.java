@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Diff and of the unified output of UnifiedDiff.
+ *  @author Michelle Wu
+ */
+public class DiffTest {
+
+    /** Number of random pairs of sequences compared. */
+    private static final int TRIALS = 2000;
+
+    /** Return a random sequence of at most MAX lines drawn from the
+     *  first N letters, using R. */
+    private static List<String> random(Random r, int max, int n) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int k = r.nextInt(max + 1); k > 0; k -= 1) {
+            result.add(String.valueOf((char) ('a' + r.nextInt(n))));
+        }
+        return result;
+    }
+
+    /** Return the length of a longest common subsequence of A and B,
+     *  computed by the textbook dynamic program. */
+    private static int lcs(List<String> a, List<String> b) {
+        int[][] t = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i += 1) {
+            for (int j = 1; j <= b.size(); j += 1) {
+                t[i][j] = a.get(i - 1).equals(b.get(j - 1))
+                        ? t[i - 1][j - 1] + 1
+                        : Math.max(t[i - 1][j], t[i][j - 1]);
+            }
+        }
+        return t[a.size()][b.size()];
+    }
+
+    /** Return the result of applying EDITS, as returned by Diff.diffs,
+     *  to A, taking inserted lines from B.  Lines that EDITS leaves
+     *  alone must equal the lines of B they land on. */
+    private static List<String> apply(List<String> a, List<String> b,
+                                      int[] edits) {
+        ArrayList<String> result = new ArrayList<>();
+        int x = 0;
+        for (int e = 0; e < edits.length; e += 4) {
+            assertTrue("edits out of order", edits[e] >= x);
+            assertTrue("empty edit", edits[e + 1] + edits[e + 3] > 0);
+            for (; x < edits[e]; x += 1) {
+                assertEquals(b.get(result.size()), a.get(x));
+                result.add(a.get(x));
+            }
+            assertEquals("misplaced insertion", edits[e + 2],
+                    result.size());
+            result.addAll(b.subList(edits[e + 2],
+                    edits[e + 2] + edits[e + 3]));
+            x = edits[e] + edits[e + 1];
+        }
+        for (; x < a.size(); x += 1) {
+            result.add(a.get(x));
+        }
+        return result;
+    }
+
+    /** Return the number of lines EDITS deletes and inserts. */
+    private static int size(int[] edits) {
+        int n = 0;
+        for (int e = 0; e < edits.length; e += 4) {
+            n += edits[e + 1] + edits[e + 3];
+        }
+        return n;
+    }
+
+    /** Return the number of lines in the runs of COMMON, as returned by
+     *  Diff.commonSubsequence. */
+    private static int matched(int[] common) {
+        int n = 0;
+        for (int k = 2; k < common.length; k += 3) {
+            n += common[k];
+        }
+        return n;
+    }
+
+    /** Myers diffs of random sequences are as short as possible and turn
+     *  the first sequence into the second. */
+    @Test
+    public void myersIsMinimal() {
+        Random r = new Random(61);
+        Diff diff = new Diff();
+        for (int t = 0; t < TRIALS; t += 1) {
+            List<String> a = random(r, 30, 1 + t % 6);
+            List<String> b = random(r, 30, 1 + t % 6);
+            diff.setSequences(a, b);
+            int best = lcs(a, b);
+            assertEquals(a + " " + b, best, diff.lls());
+            int[] edits = diff.diffs();
+            assertEquals(a.size() + b.size() - 2 * best, size(edits));
+            assertEquals(b, apply(a, b, edits));
+        }
+    }
+
+    /** lls(K1, K2) measures prefixes of the sequences. */
+    @Test
+    public void prefixLengths() {
+        Random r = new Random(17);
+        Diff diff = new Diff();
+        for (int t = 0; t < TRIALS / 10; t += 1) {
+            List<String> a = random(r, 12, 3);
+            List<String> b = random(r, 12, 3);
+            diff.setSequences(a, b);
+            for (int k1 = 0; k1 <= a.size(); k1 += 1) {
+                for (int k2 = 0; k2 <= b.size(); k2 += 1) {
+                    assertEquals(lcs(a.subList(0, k1), b.subList(0, k2)),
+                            diff.lls(k1, k2));
+                }
+            }
+        }
+    }
+
+    /** Patience diffs of random sequences are valid edit scripts. */
+    @Test
+    public void patienceApplies() {
+        Random r = new Random(3);
+        Diff diff = new Diff();
+        diff.setAlgorithm(Diff.PATIENCE);
+        for (int t = 0; t < TRIALS; t += 1) {
+            List<String> a = random(r, 30, 1 + t % 12);
+            List<String> b = random(r, 30, 1 + t % 12);
+            diff.setSequences(a, b);
+            int[] edits = diff.diffs();
+            assertEquals(b, apply(a, b, edits));
+            assertEquals(a.size() + b.size()
+                    - 2 * matched(diff.commonSubsequence()), size(edits));
+        }
+    }
+
+    /** With no line occurring once on each side there is nothing to
+     *  anchor on, and patience falls back to a minimal diff. */
+    @Test
+    public void patienceFallsBackWithoutUniqueLines() {
+        String[][][] cases = {
+            {{"x", "y", "x", "y"}, {"y", "x", "y", "x"}},
+            {{"a", "b", "a", "b", "a", "b"}, {"b", "b", "a", "a", "b", "b"}},
+            {{"a", "a", "b", "b", "c", "c"}, {"c", "c", "b", "b", "a", "a"}},
+        };
+        Diff diff = new Diff();
+        diff.setAlgorithm(Diff.PATIENCE);
+        for (String[][] c : cases) {
+            List<String> a = Arrays.asList(c[0]);
+            List<String> b = Arrays.asList(c[1]);
+            diff.setSequences(a, b);
+            assertEquals(lcs(a, b), matched(diff.commonSubsequence()));
+            assertEquals(b, apply(a, b, diff.diffs()));
+        }
+    }
+
+    /** Patience lines up lines that occur once on each side even when a
+     *  longer match of repeated lines exists, where Myers takes the
+     *  longer match. */
+    @Test
+    public void patienceAnchorsOnUniqueLines() {
+        List<String> a = Arrays.asList("A", "x", "x", "B");
+        List<String> b = Arrays.asList("x", "x", "A", "B");
+        Diff diff = new Diff();
+        diff.setSequences(a, b);
+        assertEquals(3, diff.lls());
+        diff.setAlgorithm(Diff.PATIENCE);
+        diff.setSequences(a, b);
+        assertArrayEquals(new int[] {0, 2, 1, 3, 3, 1},
+                diff.commonSubsequence());
+        assertArrayEquals(new int[] {0, 0, 0, 2, 1, 2, 3, 0},
+                diff.diffs());
+    }
+
+    /** Equal and empty sequences need no edits. */
+    @Test
+    public void noEdits() {
+        Diff diff = new Diff();
+        diff.setSequences(Arrays.asList("a", "b"), Arrays.asList("a", "b"));
+        assertTrue(diff.sequencesEqual());
+        assertEquals(0, diff.diffs().length);
+        diff.setSequences(new ArrayList<>(), new ArrayList<>());
+        assertEquals(0, diff.diffs().length);
+        assertEquals(0, diff.lls());
+    }
+
+    /** Return the lines "1" through "N". */
+    private static List<String> numbers(int n) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 1; i <= n; i += 1) {
+            result.add(Integer.toString(i));
+        }
+        return result;
+    }
+
+    /** Return what UnifiedDiff prints for PATH going from A to B, where
+     *  a null list means the file does not exist. */
+    private static String unified(String path, List<String> a,
+                                  List<String> b) {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        new UnifiedDiff(out, Diff.MYERS).compare(path,
+                a == null ? null : path, a == null ? new ArrayList<>() : a,
+                b == null ? null : path, b == null ? new ArrayList<>() : b);
+        out.flush();
+        return text.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    /** Changes more than twice the context apart get separate hunks,
+     *  each with three lines of context. */
+    @Test
+    public void unifiedHunks() {
+        List<String> a = numbers(20);
+        List<String> b = new ArrayList<>(a);
+        b.set(2, "three");
+        b.remove(16);
+        assertEquals("diff --git a/f.txt b/f.txt\n"
+                + "--- a/f.txt\n"
+                + "+++ b/f.txt\n"
+                + "@@ -1,6 +1,6 @@\n"
+                + " 1\n 2\n-3\n+three\n 4\n 5\n 6\n"
+                + "@@ -14,7 +14,6 @@\n"
+                + " 14\n 15\n 16\n-17\n 18\n 19\n 20\n",
+                unified("f.txt", a, b));
+    }
+
+    /** Changes at most twice the context apart share a hunk. */
+    @Test
+    public void unifiedJoinsNearbyChanges() {
+        List<String> a = numbers(12);
+        List<String> b = new ArrayList<>(a);
+        b.set(1, "two");
+        b.add(8, "new");
+        assertEquals("diff --git a/f.txt b/f.txt\n"
+                + "--- a/f.txt\n"
+                + "+++ b/f.txt\n"
+                + "@@ -1,11 +1,12 @@\n"
+                + " 1\n-2\n+two\n 3\n 4\n 5\n 6\n 7\n 8\n+new\n"
+                + " 9\n 10\n 11\n",
+                unified("f.txt", a, b));
+    }
+
+    /** Added and removed files are compared with /dev/null, and an
+     *  unchanged file prints nothing. */
+    @Test
+    public void unifiedNewAndRemovedFiles() {
+        assertEquals("diff --git a/n b/n\n"
+                + "--- /dev/null\n"
+                + "+++ b/n\n"
+                + "@@ -0,0 +1,2 @@\n"
+                + "+x\n+y\n",
+                unified("n", null, Arrays.asList("x", "y")));
+        assertEquals("diff --git a/g b/g\n"
+                + "--- a/g\n"
+                + "+++ /dev/null\n"
+                + "@@ -1 +0,0 @@\n"
+                + "-x\n",
+                unified("g", Arrays.asList("x"), null));
+        assertEquals("", unified("s", numbers(3), numbers(3)));
+    }
+}
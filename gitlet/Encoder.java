@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SortedMap;
+
+/** Builds the compact binary form of a gitlet metadata object.
+ *  Every encoding starts with the header written by the constructor:
+ *  the magic bytes "GL", a one-byte KIND tag and a one-byte format
+ *  version.  Integers are written as unsigned LEB128 varints, strings
+ *  as a varint length followed by UTF-8 bytes, and object ids as their
+ *  raw 20 bytes.  See Decoder for the reading side.
+ *  @author Michelle Wu
+ */
+class Encoder {
+
+    /** Magic bytes at the start of every encoded object. */
+    static final byte[] MAGIC = {'G', 'L'};
+
+    /** Current format version. */
+    static final int VERSION = 2;
+
+    /** Length in bytes of a raw SHA-1 id. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Bytes written so far. */
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /** An encoder for an object of type KIND (a single character tag). */
+    Encoder(char kind) {
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(kind);
+        out.write(VERSION);
+    }
+
+    /** Write non-negative V as a varint. */
+    void writeVarint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /** Write V as eight bytes, most significant first. */
+    void writeLong(long v) {
+        for (int shift = Long.SIZE - Byte.SIZE; shift >= 0;
+             shift -= Byte.SIZE) {
+            out.write((int) (v >>> shift));
+        }
+    }
+
+    /** Write S, which may not be null. */
+    void writeString(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(b.length);
+        out.write(b, 0, b.length);
+    }
+
+    /** Write the 40-digit hex id ID as 20 raw bytes. */
+    void writeId(String id) {
+        out.write(rawId(id), 0, ID_BYTES);
+    }
+
+    /** Write ID as 20 raw bytes. */
+    void writeId(ObjectId id) {
+        out.write(id.toBytes(), 0, ID_BYTES);
+    }
+
+    /** Return the 40-digit hex id ID as 20 raw bytes. */
+    static byte[] rawId(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("bad object id: " + id);
+        }
+        byte[] raw = new byte[ID_BYTES];
+        for (int i = 0; i < id.length(); i += 2) {
+            raw[i / 2] = (byte) (Character.digit(id.charAt(i), 16) << 4
+                    | Character.digit(id.charAt(i + 1), 16));
+        }
+        return raw;
+    }
+
+    /** Write a presence flag followed by ID if ID is not null. */
+    void writeOptionalId(String id) {
+        if (id == null) {
+            out.write(0);
+        } else {
+            out.write(1);
+            writeId(id);
+        }
+    }
+
+    /** Write MAP from names to ids: its size, then each entry in key
+     *  order.  A key is stored as the length of the prefix it shares
+     *  with the previous key and the remaining suffix. */
+    void writeIdMap(SortedMap<String, String> map) {
+        writeVarint(map.size());
+        String prev = "";
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeKey(prev, e.getKey());
+            writeId(e.getValue());
+            prev = e.getKey();
+        }
+    }
+
+    /** Write KEY as the length of the prefix it shares with PREV, the
+     *  key written before it, followed by the remaining suffix. */
+    void writeKey(String prev, String key) {
+        int shared = 0;
+        int limit = Math.min(prev.length(), key.length());
+        while (shared < limit && prev.charAt(shared) == key.charAt(shared)) {
+            shared += 1;
+        }
+        writeVarint(shared);
+        writeString(key.substring(shared));
+    }
+
+    /** Return the bytes encoded so far. */
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+}
@@ -17,8 +17,10 @@ class GitletException extends RuntimeException {
     /** A GitletException MSG as its message. */
     GitletException(String msg) {
         super(msg);
-        System.out.println(msg);
-        System.exit(0);
+        if (!Server.serving()) {
+            System.out.println(msg);
+            System.exit(0);
+        }
     }
 
 }
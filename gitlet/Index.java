@@ -0,0 +1,370 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/** A cache of the size, modification time, inode and blob hash of
+ *  tracked files in the working directory, saved as index.txt next to
+ *  staging.txt.  A file whose stat data still matches its entry is
+ *  assumed unchanged, so its hash is returned without reading it.
+ *
+ *  While a Watcher runs, the index also keeps the paths of the other
+ *  working files and the watcher's token from when they were known.
+ *  After sync() has caught up with the changes the watcher reports,
+ *  entries are trusted without even a stat, and files() lists the
+ *  working files without walking the directory.
+ *  @author Michelle Wu
+ */
+public class Index {
+
+    /** type tag of an encoded index. */
+    private static final char KIND = 'i';
+
+    /** Files modified less than this many nanoseconds before the index
+     *  was saved are re-hashed anyway: a later write within the same
+     *  timestamp tick would not change their stat data. */
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /** Current Working Directory. */
+    private static File cwd = new File(System.getProperty("user.dir"));
+
+    /** Where the index is saved. */
+    private static File indexFile = new File(cwd, ".gitlet/index.txt");
+
+    /** Stat data and hash of one file. */
+    private static class Entry {
+        /** file size in bytes. */
+        private long size;
+        /** modification time in nanoseconds since the epoch. */
+        private long mtime;
+        /** inode number, or 0 where the file system has none. */
+        private long inode;
+        /** blob id of the contents. */
+        private ObjectId id;
+
+        /** true iff this entry has the same stat data as OTHER. */
+        boolean sameStat(Entry other) {
+            return size == other.size && mtime == other.mtime
+                    && inode == other.inode;
+        }
+    }
+
+    /** key: path relative to cwd; value: its entry. */
+    private TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /** time the index was last saved, in nanoseconds since the epoch. */
+    private long savedAt;
+
+    /** true iff entries changed since the index was read. */
+    private boolean changed;
+
+    /** the watcher's token from when entries and others were last
+     *  brought up to date, or null. */
+    private String token;
+
+    /** working files without entries, as of token. */
+    private TreeSet<String> others = new TreeSet<>();
+
+    /** a token to adopt once the caller has scanned the working
+     *  directory and called setFiles, or null. */
+    private String scanToken;
+
+    /** true iff sync() caught up with the watcher in this run. */
+    private boolean watched;
+
+    /**
+     * read the index, or start an empty one if there is none.
+     * @return Index
+     */
+    public static Index fromFile() {
+        Index index = new Index();
+        if (!indexFile.exists()) {
+            return index;
+        }
+        Decoder d = new Decoder(Utils.readContents(indexFile), KIND);
+        index.savedAt = d.readVarint();
+        int size = d.readInt();
+        String prev = "";
+        for (int i = 0; i < size; i += 1) {
+            String path = d.readKey(prev);
+            Entry e = new Entry();
+            e.size = d.readVarint();
+            e.mtime = d.readVarint();
+            e.inode = d.readVarint();
+            e.id = d.readObjectId();
+            index.entries.put(path, e);
+            prev = path;
+        }
+        if (d.hasMore()) {
+            index.token = d.readInt() == 0 ? null : d.readString();
+            size = d.readInt();
+            prev = "";
+            for (int i = 0; i < size; i += 1) {
+                prev = d.readKey(prev);
+                index.others.add(prev);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * save the index if any entry changed.
+     */
+    public void save() {
+        if (!changed) {
+            return;
+        }
+        Encoder e = new Encoder(KIND);
+        savedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        e.writeVarint(savedAt);
+        e.writeVarint(entries.size());
+        String prev = "";
+        for (Map.Entry<String, Entry> en : entries.entrySet()) {
+            Entry entry = en.getValue();
+            e.writeKey(prev, en.getKey());
+            e.writeVarint(entry.size);
+            e.writeVarint(entry.mtime);
+            e.writeVarint(entry.inode);
+            e.writeId(entry.id);
+            prev = en.getKey();
+        }
+        if (token == null) {
+            e.writeVarint(0);
+        } else {
+            e.writeVarint(1);
+            e.writeString(token);
+        }
+        e.writeVarint(token == null ? 0 : others.size());
+        prev = "";
+        for (String path : token == null ? new TreeSet<String>() : others) {
+            e.writeKey(prev, path);
+            prev = path;
+        }
+        Utils.writeContents(indexFile, (Object) e.toByteArray());
+        changed = false;
+    }
+
+    /**
+     * get the blob hash of the working file at PATH, re-hashing it
+     * only if its stat data changed since it was last hashed.  After
+     * sync(), an entry is trusted without looking at the file.
+     * @param path : path relative to cwd.
+     * @return blob id, or null if there is no such file.
+     */
+    public ObjectId hash(String path) {
+        Entry old = entries.get(path);
+        if (watched && old != null) {
+            return old.id;
+        }
+        File f = new File(cwd, path);
+        Entry now = stat(f);
+        if (now == null) {
+            if (entries.remove(path) != null) {
+                changed = true;
+            }
+            return null;
+        }
+        if (old != null && old.sameStat(now)
+                && old.mtime < savedAt - RACY_NANOS) {
+            return old.id;
+        }
+        now.id = Blobs.hash(f);
+        entries.put(path, now);
+        changed = true;
+        return now.id;
+    }
+
+    /**
+     * get the blob hashes of many working files at once.  Stat calls
+     * and the hashing of changed files run in parallel on the common
+     * fork-join pool; the entries are updated afterwards.
+     * @param paths : paths relative to cwd.
+     * @return blob id by path, without paths that are not files.
+     */
+    public TreeMap<String, ObjectId> hashAll(List<String> paths) {
+        Entry[] now = new Entry[paths.size()];
+        boolean[] rehashed = new boolean[paths.size()];
+        IntStream.range(0, paths.size()).parallel().forEach(i -> {
+            Entry old = entries.get(paths.get(i));
+            if (watched && old != null) {
+                now[i] = old;
+                return;
+            }
+            File f = new File(cwd, paths.get(i));
+            now[i] = stat(f);
+            if (now[i] == null) {
+                return;
+            }
+            if (old != null && old.sameStat(now[i])
+                    && old.mtime < savedAt - RACY_NANOS) {
+                now[i].id = old.id;
+            } else {
+                now[i].id = Blobs.hash(f);
+                rehashed[i] = true;
+            }
+        });
+        TreeMap<String, ObjectId> result = new TreeMap<>();
+        for (int i = 0; i < now.length; i += 1) {
+            String path = paths.get(i);
+            if (now[i] == null) {
+                if (entries.remove(path) != null) {
+                    changed = true;
+                }
+                continue;
+            }
+            if (rehashed[i]) {
+                entries.put(path, now[i]);
+                changed = true;
+            }
+            result.put(path, now[i].id);
+        }
+        return result;
+    }
+
+    /**
+     * catch up with the changes reported by a running Watcher: entries
+     * of changed files are dropped so that they are looked at again,
+     * and the other working files are updated.
+     * @return true if files() now lists the working files; false if
+     *         there is no watcher or it could not tell what changed,
+     *         in which case the caller scans the working directory
+     *         and passes what it found to setFiles.
+     */
+    public boolean sync() {
+        Watcher.Changes c = Watcher.changes(token);
+        if (c == null || c.paths() == null) {
+            scanToken = c == null ? null : c.token();
+            if (token != null) {
+                token = null;
+                others.clear();
+                changed = true;
+            }
+            return false;
+        }
+        for (String path : c.paths()) {
+            if (path.endsWith("/")) {
+                forget(entries.navigableKeySet(), path);
+                forget(others, path);
+            }
+        }
+        for (String path : c.paths()) {
+            if (!path.endsWith("/")) {
+                entries.remove(path);
+                others.remove(path);
+                if (new File(cwd, path).isFile()) {
+                    others.add(path);
+                }
+            }
+        }
+        token = c.token();
+        changed = true;
+        watched = true;
+        return true;
+    }
+
+    /**
+     * get ready for another command in the same process: entries are
+     * no longer trusted until sync() is called again.
+     */
+    public void reuse() {
+        watched = false;
+        scanToken = null;
+    }
+
+    /**
+     * remove the paths under directory DIR from PATHS.
+     * @param paths : sorted paths.
+     * @param dir : directory path followed by '/'.
+     */
+    private static void forget(SortedSet<String> paths, String dir) {
+        Iterator<String> i = paths.tailSet(dir).iterator();
+        while (i.hasNext() && i.next().startsWith(dir)) {
+            i.remove();
+        }
+    }
+
+    /**
+     * list the working files; only valid after sync() returned true.
+     * @return sorted paths relative to cwd.
+     */
+    public List<String> files() {
+        TreeSet<String> result = new TreeSet<>(others);
+        result.addAll(entries.keySet());
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * record the working files found by a scan, so that a watcher
+     * can report changes to them from now on.
+     * @param files : every working file, relative to cwd.
+     */
+    public void setFiles(Collection<String> files) {
+        if (scanToken != null) {
+            token = scanToken;
+            scanToken = null;
+        }
+        if (token == null) {
+            return;
+        }
+        others = new TreeSet<>(files);
+        others.removeAll(entries.keySet());
+        changed = true;
+    }
+
+    /**
+     * drop entries for paths not in KEEP.
+     * @param keep : paths still of interest.
+     */
+    public void retainAll(Set<String> keep) {
+        if (entries.keySet().retainAll(keep)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * read the stat data of F.
+     * @param f : file.
+     * @return Entry without hash, or null if F is not a plain file.
+     */
+    private static Entry stat(File f) {
+        Entry e = new Entry();
+        try {
+            try {
+                Map<String, Object> attrs = Files.readAttributes(f.toPath(),
+                        "unix:isRegularFile,size,lastModifiedTime,ino");
+                if (!(Boolean) attrs.get("isRegularFile")) {
+                    return null;
+                }
+                e.size = (Long) attrs.get("size");
+                e.mtime = ((FileTime) attrs.get("lastModifiedTime"))
+                        .to(TimeUnit.NANOSECONDS);
+                e.inode = (Long) attrs.get("ino");
+            } catch (UnsupportedOperationException excp) {
+                BasicFileAttributes attrs = Files.readAttributes(f.toPath(),
+                        BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                e.size = attrs.size();
+                e.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return e;
+    }
+}
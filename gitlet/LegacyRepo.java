@@ -0,0 +1,308 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A repository written by the first version of gitlet, and its
+ *  conversion to the current format (the migrate command).  That
+ *  version saved repo.txt, staging.txt and each commit in .commits/
+ *  with Java serialization, every commit holding its whole ancestry,
+ *  and kept each blob as a plain file .blobs/ID.txt.
+ *
+ *  Old commits are read into the Old classes below, whose fields
+ *  mirror the ones that were saved, and written again as encoded
+ *  commits with trees.  Commit hashes are kept, since the old and new
+ *  versions compute them from the same values, so ids users have
+ *  written down stay valid.  Blobs are stored again under the hash of
+ *  their contents, which for the old version's files is the hash they
+ *  already had.
+ *  @author Michelle Wu
+ */
+class LegacyRepo {
+
+    /** Main metadata folder. */
+    private static final File GITLET_FOLDER =
+            new File(System.getProperty("user.dir"), ".gitlet");
+
+    /** The saved repo. */
+    private static final File REPO_FILE = new File(GITLET_FOLDER, "repo.txt");
+
+    /** The saved staging area. */
+    private static final File STAGING_FILE =
+            new File(GITLET_FOLDER, "staging.txt");
+
+    /** First bytes of every file written by Java serialization. */
+    private static final byte[] MAGIC = {(byte) 0xAC, (byte) 0xED};
+
+    /** Classes of the old version, by name, and the Old classes that
+     *  stand in for them. */
+    private static final Map<String, Class<?>> STAND_INS = Map.of(
+            "gitlet.Repo", OldRepo.class,
+            "gitlet.StagingArea", OldStage.class,
+            "gitlet.Commit", OldCommit.class);
+
+    /** A repo as the old version saved it. */
+    private static class OldRepo implements Serializable {
+        /** Serialization version; the stream's own is not checked. */
+        private static final long serialVersionUID = 1L;
+        /** Staging area. */
+        private OldStage stage;
+        /** First commit. */
+        private OldCommit first;
+        /** Head commit. */
+        private OldCommit head;
+        /** Current branch. */
+        private String branch;
+        /** key: branch name; value: hash of its head commit. */
+        private TreeMap<String, String> branchMap;
+    }
+
+    /** A staging area as the old version saved it. */
+    private static class OldStage implements Serializable {
+        /** Serialization version; the stream's own is not checked. */
+        private static final long serialVersionUID = 1L;
+        /** key: file staged for addition; value: blob hash. */
+        private TreeMap<String, String> toAdd;
+        /** key: file staged for removal; value: blob hash. */
+        private TreeMap<String, String> toDelete;
+    }
+
+    /** A commit as the old version saved it. */
+    private static class OldCommit implements Serializable {
+        /** Serialization version; the stream's own is not checked. */
+        private static final long serialVersionUID = 1L;
+        /** Commit log. */
+        private String log;
+        /** Time of commit. */
+        private ZonedDateTime time;
+        /** key: file name; value: blob hash. */
+        private TreeMap<String, String> trackedList;
+        /** Parent, or null for the first commit. */
+        private OldCommit parent;
+        /** Merge parent, or null. */
+        private OldCommit mergeParent;
+        /** Hash of the commit. */
+        private String hash;
+    }
+
+    /** Reads objects of the old version as their stand-ins.  Each class
+     *  descriptor in the stream is replaced by the stand-in's, so the
+     *  saved fields are read by name into the stand-in; classes other
+     *  than the stand-ins and the JDK's are refused. */
+    private static class OldObjectInputStream extends ObjectInputStream {
+
+        /**
+         * a stream of old objects read from IN.
+         * @param in : serialized data.
+         * @throws IOException if IN has no serialization header.
+         */
+        OldObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+                throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> standIn = STAND_INS.get(desc.getName());
+            if (standIn == null) {
+                return desc;
+            }
+            ObjectStreamClass local = ObjectStreamClass.lookup(standIn);
+            ObjectStreamField[] saved = desc.getFields();
+            ObjectStreamField[] wanted = local.getFields();
+            boolean same = saved.length == wanted.length;
+            for (int i = 0; same && i < saved.length; i += 1) {
+                same = saved[i].getName().equals(wanted[i].getName())
+                        && saved[i].getTypeCode() == wanted[i].getTypeCode();
+            }
+            if (!same) {
+                throw new InvalidClassException(desc.getName(),
+                        "unexpected fields");
+            }
+            return local;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (!name.startsWith("java.") && STAND_INS.values().stream()
+                    .noneMatch(c -> c.getName().equals(name))) {
+                throw new InvalidClassException(name, "not a gitlet class");
+            }
+            return super.resolveClass(desc);
+        }
+    }
+
+    /**
+     * check whether the repo in the current directory was saved by the
+     * old version.
+     * @return boolean
+     */
+    static boolean found() {
+        if (!REPO_FILE.isFile() || REPO_FILE.length() < MAGIC.length) {
+            return false;
+        }
+        try (InputStream in = new FileInputStream(REPO_FILE)) {
+            byte[] head = in.readNBytes(MAGIC.length);
+            return head[0] == MAGIC[0] && head[1] == MAGIC[1];
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * rewrite the old repo in the current directory in the current
+     * format.
+     * @return number of commits converted.
+     * @throws IOException
+     */
+    static int convert() throws IOException {
+        OldRepo repo = read(REPO_FILE, OldRepo.class);
+        OldStage stage = STAGING_FILE.isFile()
+                ? read(STAGING_FILE, OldStage.class) : repo.stage;
+        File commitFolder = ObjectStore.folder(ObjectStore.COMMIT);
+        List<String> commitFiles = Utils.plainFilenamesIn(commitFolder);
+        LinkedHashMap<String, OldCommit> commits = new LinkedHashMap<>();
+        if (commitFiles != null) {
+            for (String name : commitFiles) {
+                if (name.endsWith(".txt")) {
+                    collect(read(new File(commitFolder, name),
+                            OldCommit.class), commits);
+                }
+            }
+        }
+        collect(repo.head, commits);
+
+        ObjectStore.folder(ObjectStore.TREE).mkdir();
+        HashMap<String, String> blobIds = new HashMap<>();
+        File blobFolder = ObjectStore.folder(ObjectStore.BLOB);
+        List<String> blobFiles = Utils.plainFilenamesIn(blobFolder);
+        if (blobFiles != null) {
+            for (String name : blobFiles) {
+                if (name.endsWith(".txt")) {
+                    blobIds.put(name.substring(0,
+                            name.length() - ".txt".length()),
+                            Blobs.store(new File(blobFolder, name)));
+                }
+            }
+        }
+
+        for (OldCommit old : commits.values()) {
+            new Commit(old.hash, old.log, old.time,
+                    Tree.update(null, renamed(old.trackedList, blobIds),
+                            new TreeMap<>()),
+                    old.parent == null ? null : old.parent.hash,
+                    old.mergeParent == null ? null : old.mergeParent.hash)
+                    .saveFile();
+        }
+        StagingArea newStage = new StagingArea();
+        if (stage != null) {
+            renamed(stage.toAdd, blobIds).forEach(newStage::stageAdd);
+            renamed(stage.toDelete, blobIds).forEach(newStage::stageDelete);
+        }
+        new Repo(repo.first.hash, repo.head.hash, repo.branch,
+                repo.branchMap, newStage).saveRepo();
+
+        deleteOld(commitFolder, commitFiles);
+        deleteOld(blobFolder, blobFiles);
+        return commits.size();
+    }
+
+    /**
+     * delete the old objects NAMES from FOLDER.
+     * @param folder : .commits or .blobs.
+     * @param names : plain files in FOLDER; may be null.
+     */
+    private static void deleteOld(File folder, List<String> names) {
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(".txt")) {
+                    new File(folder, name).delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * read an object of the old version from F.
+     * @param f : file written by Java serialization.
+     * @param type : stand-in class expected.
+     * @param <T> : type of the stand-in.
+     * @return T
+     */
+    private static <T> T read(File f, Class<T> type) {
+        try (ObjectInputStream in =
+                     new OldObjectInputStream(new FileInputStream(f))) {
+            return type.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException("cannot read " + f + ": "
+                    + excp.getMessage());
+        }
+    }
+
+    /**
+     * add C and its ancestors to COMMITS, each after its parents.
+     * @param c : commit; may be null.
+     * @param commits : key: hash; value: commit.
+     */
+    private static void collect(OldCommit c,
+                                LinkedHashMap<String, OldCommit> commits) {
+        ArrayDeque<OldCommit> stack = new ArrayDeque<>();
+        if (c != null) {
+            stack.push(c);
+        }
+        while (!stack.isEmpty()) {
+            OldCommit top = stack.peek();
+            if (commits.containsKey(top.hash)) {
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (OldCommit p : new OldCommit[] {top.parent,
+                                                top.mergeParent}) {
+                if (p != null && !commits.containsKey(p.hash)) {
+                    stack.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                commits.put(top.hash, stack.pop());
+            }
+        }
+    }
+
+    /**
+     * give the blobs in FILES the hashes they were stored under.
+     * @param files : key: file name; value: old blob hash.
+     * @param blobIds : key: old blob hash; value: new blob hash.
+     * @return key: file name; value: blob hash.
+     */
+    private static TreeMap<String, String> renamed(
+            Map<String, String> files, Map<String, String> blobIds) {
+        TreeMap<String, String> result = new TreeMap<>();
+        if (files != null) {
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                result.put(e.getKey(),
+                        blobIds.getOrDefault(e.getValue(), e.getValue()));
+            }
+        }
+        return result;
+    }
+}
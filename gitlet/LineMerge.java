@@ -0,0 +1,184 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A three-way merge of the lines of a file, in the manner of diff3.
+ *  Both new versions are compared with their common ancestor; regions
+ *  that only one side changed take that side's lines, regions changed
+ *  the same way on both sides are taken once, and only regions changed
+ *  differently on both sides are written between conflict markers.
+ *  Lines keep their line terminators so that a clean merge reproduces
+ *  the bytes of both sides exactly.
+ *  @author Michelle Wu
+ */
+class LineMerge {
+
+    /** Opens a conflict region; the current branch's lines follow. */
+    static final String OURS = "<<<<<<< HEAD\n";
+
+    /** Separates the two sides of a conflict region. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Closes a conflict region. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** The common ancestor's lines. */
+    private final List<String> base;
+
+    /** The current branch's lines. */
+    private final List<String> ours;
+
+    /** The given branch's lines. */
+    private final List<String> theirs;
+
+    /**
+     * a merge of the blobs BASEID, OURSID and THEIRSID.
+     * @param baseId : hash of the ancestor's blob, or null if none.
+     * @param oursId : hash of the current branch's blob.
+     * @param theirsId : hash of the given branch's blob.
+     * @throws IOException if a blob cannot be read.
+     */
+    LineMerge(String baseId, String oursId, String theirsId)
+            throws IOException {
+        this(lines(baseId), lines(oursId), lines(theirsId));
+    }
+
+    /**
+     * a merge of the lines BASE, OURS and THEIRS, each ending with its
+     * line terminator (the last may lack one).
+     * @param base : the ancestor's lines.
+     * @param ours : the current branch's lines.
+     * @param theirs : the given branch's lines.
+     */
+    LineMerge(List<String> base, List<String> ours, List<String> theirs) {
+        this.base = base;
+        this.ours = ours;
+        this.theirs = theirs;
+    }
+
+    /**
+     * write the merged lines to OUT, marking conflicting regions.
+     * @param out : destination.
+     * @return true if there were no conflicts.
+     * @throws IOException if OUT cannot be written.
+     */
+    boolean write(OutputStream out) throws IOException {
+        int[] toOurs = matches(ours);
+        int[] toTheirs = matches(theirs);
+        boolean clean = true;
+        int i = 0, a = 0, b = 0;
+        while (true) {
+            while (i < base.size() && toOurs[i] == a && toTheirs[i] == b) {
+                put(out, base.get(i));
+                i += 1;
+                a += 1;
+                b += 1;
+            }
+            if (i == base.size() && a == ours.size() && b == theirs.size()) {
+                return clean;
+            }
+            int j = i;
+            while (j < base.size() && (toOurs[j] < 0 || toTheirs[j] < 0)) {
+                j += 1;
+            }
+            int endA = j < base.size() ? toOurs[j] : ours.size();
+            int endB = j < base.size() ? toTheirs[j] : theirs.size();
+            List<String> o = base.subList(i, j);
+            List<String> x = ours.subList(a, endA);
+            List<String> y = theirs.subList(b, endB);
+            if (x.equals(o) || x.equals(y)) {
+                putAll(out, y);
+            } else if (y.equals(o)) {
+                putAll(out, x);
+            } else {
+                clean = false;
+                put(out, OURS);
+                putAll(out, x);
+                put(out, SEPARATOR);
+                putAll(out, y);
+                put(out, THEIRS);
+            }
+            i = j;
+            a = endA;
+            b = endB;
+        }
+    }
+
+    /**
+     * match the lines of the ancestor with those of OTHER.
+     * @param other : a new version.
+     * @return for each ancestor line, the matching line of OTHER or -1.
+     */
+    private int[] matches(List<String> other) {
+        Diff diff = new Diff();
+        diff.setSequences(base, other);
+        int[] result = new int[base.size()];
+        Arrays.fill(result, -1);
+        int[] common = diff.commonSubsequence();
+        for (int k = 0; k < common.length; k += 3) {
+            for (int n = 0; n < common[k + 2]; n += 1) {
+                result[common[k] + n] = common[k + 1] + n;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * read blob ID as lines, each with its terminator.
+     * @param id : blob hash, or null for no lines.
+     * @return List
+     * @throws IOException if the blob cannot be read.
+     */
+    private static List<String> lines(String id) throws IOException {
+        ArrayList<String> result = new ArrayList<>();
+        if (id == null) {
+            return result;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = Blobs.open(id)) {
+            in.transferTo(bytes);
+        }
+        String text = bytes.toString(StandardCharsets.ISO_8859_1.name());
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0;
+             end = text.indexOf('\n', start)) {
+            result.add(text.substring(start, end + 1));
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+
+    /**
+     * write LINE to OUT.
+     * @param out : destination.
+     * @param line : one line, read as ISO-8859-1.
+     * @throws IOException if OUT cannot be written.
+     */
+    private static void put(OutputStream out, String line)
+            throws IOException {
+        out.write(line.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * write LINES to OUT.
+     * @param out : destination.
+     * @param lines : lines read as ISO-8859-1.
+     * @throws IOException if OUT cannot be written.
+     */
+    private static void putAll(OutputStream out, List<String> lines)
+            throws IOException {
+        for (String line : lines) {
+            put(out, line);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the three-way line merge.
+ *  @author Michelle Wu
+ */
+public class LineMergeTest {
+
+    /** Return TEXT split into lines, each keeping its '\n'. */
+    private static List<String> lines(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0;
+             end = text.indexOf('\n', start)) {
+            result.add(text.substring(start, end + 1));
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+
+    /** The output of merging BASE, OURS and THEIRS, and whether the
+     *  merge was clean, as "clean:" or "conflict:" before the text. */
+    private static String merge(String base, String ours, String theirs)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean clean = new LineMerge(lines(base), lines(ours),
+                lines(theirs)).write(out);
+        return (clean ? "clean:" : "conflict:")
+                + out.toString(StandardCharsets.ISO_8859_1.name());
+    }
+
+    /** Changes to different regions are both taken. */
+    @Test
+    public void separateChanges() throws IOException {
+        assertEquals("clean:1\nTWO\n3\n4\nFIVE\n",
+                merge("1\n2\n3\n4\n5\n", "1\nTWO\n3\n4\n5\n",
+                        "1\n2\n3\n4\nFIVE\n"));
+    }
+
+    /** A change made the same way on both sides is taken once. */
+    @Test
+    public void sameChange() throws IOException {
+        assertEquals("clean:a\nB\nc\n",
+                merge("a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n"));
+    }
+
+    /** A region removed on one side and untouched on the other stays
+     *  removed, and lines added at the end of one side are kept. */
+    @Test
+    public void deletionAndAppend() throws IOException {
+        assertEquals("clean:a\nd\ne\n",
+                merge("a\nb\nc\nd\n", "a\nd\n", "a\nb\nc\nd\ne\n"));
+    }
+
+    /** Only the region changed differently is put between markers; the
+     *  lines around it are written once. */
+    @Test
+    public void conflictRegion() throws IOException {
+        assertEquals("conflict:a\n"
+                + LineMerge.OURS + "X\n"
+                + LineMerge.SEPARATOR + "Y\n"
+                + LineMerge.THEIRS + "c\nd\nE\n",
+                merge("a\nb\nc\nd\ne\n", "a\nX\nc\nd\ne\n",
+                        "a\nY\nc\nd\nE\n"));
+    }
+
+    /** Different lines inserted at the same place conflict, with
+     *  nothing from the ancestor between them. */
+    @Test
+    public void conflictingInsertions() throws IOException {
+        assertEquals("conflict:a\n"
+                + LineMerge.OURS + "x\n"
+                + LineMerge.SEPARATOR + "y\nz\n"
+                + LineMerge.THEIRS + "b\n",
+                merge("a\nb\n", "a\nx\nb\n", "a\ny\nz\nb\n"));
+    }
+
+    /** A region changed on one side and removed on the other conflicts,
+     *  with an empty side. */
+    @Test
+    public void changeAgainstDeletion() throws IOException {
+        assertEquals("conflict:a\n"
+                + LineMerge.OURS + "B\n"
+                + LineMerge.SEPARATOR
+                + LineMerge.THEIRS + "c\n",
+                merge("a\nb\nc\n", "a\nB\nc\n", "a\nc\n"));
+    }
+
+    /** A last line without a terminator, and bytes that are not UTF-8,
+     *  come through unchanged. */
+    @Test
+    public void bytesKept() throws IOException {
+        assertEquals("clean:A\nb\u00e9\u00ff",
+                merge("a\nb\u00e9\u00ff",
+                        "a\nb\u00e9\u00ff",
+                        "A\nb\u00e9\u00ff"));
+        assertEquals("clean:a\nb\n",
+                merge("a\nb", "a\nb\n", "a\nb"));
+    }
+
+    /** Merging with an empty ancestor and identical sides is clean. */
+    @Test
+    public void bothAdded() throws IOException {
+        assertEquals("clean:x\ny\n", merge("", "x\ny\n", "x\ny\n"));
+    }
+}
@@ -17,19 +17,33 @@ public class Main {
      Repo r: repo object(s) representing
      current working repo (Expand to support additional ones)
      initialize repo
+     If a server is running, the command is passed to it instead.
      @param args
      **/
     public static void main(String... args) throws IOException {
         if (args.length == 0) {
             throw new GitletException("Please enter a command.");
         }
-        Repo currentRepo = null;
+        if (Server.forward(args)) {
+            return;
+        }
         if (args[0].equals("init")) {
             new Repo();
             return;
-        } else {
-            currentRepo = Repo.findRepo();
+        } else if (args[0].equals("migrate")) {
+            Repo.migrate(args);
+            return;
         }
+        run(Repo.findRepo(), args);
+    }
+
+    /**
+     * carry out the command ARGS on CURRENTREPO and save it.
+     * @param currentRepo : the repo in the current directory.
+     * @param args : command line; not init.
+     * @throws IOException
+     */
+    static void run(Repo currentRepo, String... args) throws IOException {
         switch (args[0]) {
         case "add":
             currentRepo.add(args);
@@ -38,7 +52,7 @@ public class Main {
             currentRepo.makeCommit(args);
             break;
         case "log":
-            currentRepo.log();
+            currentRepo.log(args);
             break;
         case "global-log":
             currentRepo.globalLog();
@@ -67,6 +81,21 @@ public class Main {
         case "branch":
             currentRepo.branch(args);
             break;
+        case "config":
+            currentRepo.config(args);
+            break;
+        case "diff":
+            currentRepo.diff(args);
+            break;
+        case "gc":
+            currentRepo.gc(args);
+            break;
+        case "watch":
+            currentRepo.watch(args);
+            return;
+        case "server":
+            currentRepo.server(args);
+            return;
         default:
             throw new GitletException("No command with that name exists.");
         }
@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** End-to-end tests of merge, each running gitlet commands in a fresh
+ *  directory.  The commands run in separate processes, since gitlet
+ *  takes its working directory from the user.dir of the JVM.
+ *  @author Michelle Wu
+ */
+public class MergeTest {
+
+    /** Directory the commands run in. */
+    private File dir;
+
+    /** Make an empty repository with a first commit of two files, and
+     *  a branch "other" at that commit. */
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("gitlet").toFile();
+        gitlet("init");
+        write("f.txt", "one\ntwo\nthree\n");
+        write("k.txt", "keep\n");
+        gitlet("add", "f.txt");
+        gitlet("add", "k.txt");
+        gitlet("commit", "base");
+        gitlet("branch", "other");
+    }
+
+    /** Remove the directory and everything in it. */
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /** Run gitlet with ARGS in dir and return what it printed. */
+    private String gitlet(String... args) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList("java",
+                "-cp", System.getProperty("java.class.path"),
+                "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true).start();
+        try {
+            String out = new String(p.getInputStream().readAllBytes(),
+                    StandardCharsets.UTF_8);
+            p.waitFor();
+            return out.replace(System.lineSeparator(), "\n");
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+    }
+
+    /** Write TEXT to the file NAME in dir. */
+    private void write(String name, String text) throws IOException {
+        File f = new File(dir, name);
+        f.getParentFile().mkdirs();
+        Files.writeString(f.toPath(), text);
+    }
+
+    /** Return the contents of the file NAME in dir, or null if there is
+     *  none. */
+    private String read(String name) throws IOException {
+        File f = new File(dir, name);
+        return f.isFile() ? Files.readString(f.toPath()) : null;
+    }
+
+    /** Commit MSG on the branch "other", after doing CHANGES there, and
+     *  go back to master. */
+    private void onOther(String msg, Changes changes) throws IOException {
+        gitlet("checkout", "other");
+        changes.make();
+        gitlet("commit", msg);
+        gitlet("checkout", "master");
+    }
+
+    /** Edits made to the working directory before a commit. */
+    private interface Changes {
+        /** Make the edits. */
+        void make() throws IOException;
+    }
+
+    /** Changes to different files, and to different lines of one file,
+     *  merge cleanly. */
+    @Test
+    public void cleanMerge() throws IOException {
+        write("f.txt", "ONE\ntwo\nthree\n");
+        gitlet("add", "f.txt");
+        gitlet("commit", "ours");
+        onOther("theirs", () -> {
+            write("f.txt", "one\ntwo\nTHREE\n");
+            write("n.txt", "new\n");
+            gitlet("add", "f.txt");
+            gitlet("add", "n.txt");
+        });
+        assertEquals("", gitlet("merge", "other"));
+        assertEquals("ONE\ntwo\nTHREE\n", read("f.txt"));
+        assertEquals("new\n", read("n.txt"));
+        assertEquals("keep\n", read("k.txt"));
+    }
+
+    /** A file removed on one side and left alone on the other is
+     *  removed by the merge. */
+    @Test
+    public void deletionTaken() throws IOException {
+        write("f.txt", "ONE\ntwo\nthree\n");
+        gitlet("add", "f.txt");
+        gitlet("commit", "ours");
+        onOther("theirs", () -> gitlet("rm", "k.txt"));
+        assertEquals("", gitlet("merge", "other"));
+        assertNull(read("k.txt"));
+        assertTrue(gitlet("status").contains(
+                "=== Untracked Files ===\n\n"));
+    }
+
+    /** Removing a file in a subdirectory removes the directories it
+     *  leaves empty, both for rm and for merge. */
+    @Test
+    public void nestedDeletion() throws IOException {
+        write("a/b/x.txt", "x\n");
+        write("a/y.txt", "y\n");
+        gitlet("add", "a");
+        gitlet("commit", "nested");
+        gitlet("branch", "nested");
+        gitlet("checkout", "nested");
+        gitlet("rm", "a/b/x.txt");
+        assertFalse(new File(dir, "a/b").exists());
+        gitlet("commit", "theirs");
+        gitlet("checkout", "master");
+        assertEquals("x\n", read("a/b/x.txt"));
+        write("f.txt", "ONE\ntwo\nthree\n");
+        gitlet("add", "f.txt");
+        gitlet("commit", "ours");
+        assertEquals("", gitlet("merge", "nested"));
+        assertNull(read("a/b/x.txt"));
+        assertFalse(new File(dir, "a/b").exists());
+        assertEquals("y\n", read("a/y.txt"));
+    }
+
+    /** An untracked file with the same contents as the one being
+     *  checked out is not in the way, for checkout of a branch or for
+     *  reset; one with other contents is. */
+    @Test
+    public void identicalUntrackedFile() throws IOException {
+        onOther("theirs", () -> {
+            write("n.txt", "new\n");
+            gitlet("add", "n.txt");
+        });
+        String theirs = gitlet("find", "theirs").trim();
+        write("n.txt", "new\n");
+        assertEquals("", gitlet("checkout", "other"));
+        assertEquals("new\n", read("n.txt"));
+        gitlet("checkout", "master");
+        assertNull(read("n.txt"));
+        write("n.txt", "new\n");
+        assertEquals("", gitlet("reset", theirs));
+        assertEquals("new\n", read("n.txt"));
+        gitlet("reset", gitlet("find", "base").trim());
+        write("n.txt", "other\n");
+        assertEquals("There is an untracked file in the way; delete it, "
+                + "or add and commit it first.\n",
+                gitlet("reset", theirs));
+        assertEquals("other\n", read("n.txt"));
+    }
+
+    /** A file we modified and they removed conflicts, and the conflict
+     *  file is left in the working directory and committed. */
+    @Test
+    public void modifiedHereDeletedThere() throws IOException {
+        write("k.txt", "changed\n");
+        gitlet("add", "k.txt");
+        gitlet("commit", "ours");
+        onOther("theirs", () -> gitlet("rm", "k.txt"));
+        assertEquals("Encountered a merge conflict.\n",
+                gitlet("merge", "other"));
+        String conflict = LineMerge.OURS + "changed\n"
+                + LineMerge.SEPARATOR + LineMerge.THEIRS;
+        assertEquals(conflict, read("k.txt"));
+        gitlet("checkout", "other");
+        assertNull(read("k.txt"));
+        gitlet("checkout", "master");
+        assertEquals(conflict, read("k.txt"));
+    }
+
+    /** A file we removed and they modified conflicts the same way, with
+     *  our side empty. */
+    @Test
+    public void deletedHereModifiedThere() throws IOException {
+        gitlet("rm", "k.txt");
+        gitlet("commit", "ours");
+        onOther("theirs", () -> {
+            write("k.txt", "changed\n");
+            gitlet("add", "k.txt");
+        });
+        assertEquals("Encountered a merge conflict.\n",
+                gitlet("merge", "other"));
+        assertEquals(LineMerge.OURS + LineMerge.SEPARATOR + "changed\n"
+                + LineMerge.THEIRS, read("k.txt"));
+    }
+
+    /** A file removed on both sides stays removed, and an untracked file
+     *  that happens to have its name is left alone. */
+    @Test
+    public void deletedOnBothSides() throws IOException {
+        gitlet("rm", "k.txt");
+        write("f.txt", "ONE\ntwo\nthree\n");
+        gitlet("add", "f.txt");
+        gitlet("commit", "ours");
+        onOther("theirs", () -> gitlet("rm", "k.txt"));
+        write("k.txt", "mine\n");
+        gitlet("merge", "other");
+        assertEquals("mine\n", read("k.txt"));
+    }
+}
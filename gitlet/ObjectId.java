@@ -0,0 +1,161 @@
+package gitlet;
+
+/** The SHA-1 name of a stored object, held as its 20 raw bytes in two
+ *  longs and an int instead of as 40 hex characters.  Ids compare in
+ *  the order of their hex spellings, and toString gives that spelling
+ *  back wherever one is printed or used as a file name.
+ *  @author Michelle Wu
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** Bytes 0-7 of the id, big-endian. */
+    private final long high;
+
+    /** Bytes 8-15 of the id, big-endian. */
+    private final long middle;
+
+    /** Bytes 16-19 of the id, big-endian. */
+    private final int low;
+
+    /**
+     * an id made of its three parts.
+     * @param high : bytes 0-7.
+     * @param middle : bytes 8-15.
+     * @param low : bytes 16-19.
+     */
+    private ObjectId(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    /**
+     * parse a hex id.
+     * @param hex : 40 hex digits.
+     * @return ObjectId
+     */
+    static ObjectId of(String hex) {
+        if (hex.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("bad object id: " + hex);
+        }
+        return new ObjectId(parse(hex, 0, 16), parse(hex, 16, 16),
+                (int) parse(hex, 32, 8));
+    }
+
+    /**
+     * read the raw id at OFFSET in DATA.
+     * @param data : bytes.
+     * @param offset : first of Encoder.ID_BYTES bytes.
+     * @return ObjectId
+     */
+    static ObjectId of(byte[] data, int offset) {
+        return new ObjectId(getLong(data, offset),
+                getLong(data, offset + Long.BYTES),
+                (int) (getLong(data, offset + 2 * Long.BYTES - Integer.BYTES)
+                        & 0xFFFFFFFFL));
+    }
+
+    /**
+     * write the raw id into DATA at OFFSET.
+     * @param data : destination.
+     * @param offset : first of Encoder.ID_BYTES bytes.
+     */
+    void copyTo(byte[] data, int offset) {
+        putLong(data, offset, high, Long.BYTES);
+        putLong(data, offset + Long.BYTES, middle, Long.BYTES);
+        putLong(data, offset + 2 * Long.BYTES, low, Integer.BYTES);
+    }
+
+    /**
+     * get the raw id.
+     * @return Encoder.ID_BYTES bytes.
+     */
+    byte[] toBytes() {
+        byte[] raw = new byte[Encoder.ID_BYTES];
+        copyTo(raw, 0);
+        return raw;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(high, other.high);
+        if (c == 0) {
+            c = Long.compareUnsigned(middle, other.middle);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(low, other.low);
+        }
+        return c;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return high == other.high && middle == other.middle
+                && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high >>> 32);
+    }
+
+    /**
+     * spell this id in hex.
+     * @return 40 lower-case hex digits.
+     */
+    @Override
+    public String toString() {
+        return Sha1.hex(toBytes());
+    }
+
+    /**
+     * parse LEN hex digits of HEX starting at START.
+     * @param hex : hex digits.
+     * @param start : first digit.
+     * @param len : at most 16.
+     * @return their value.
+     */
+    private static long parse(String hex, int start, int len) {
+        long v = 0;
+        for (int i = start; i < start + len; i += 1) {
+            int d = Character.digit(hex.charAt(i), 16);
+            if (d < 0) {
+                throw new IllegalArgumentException("bad object id: " + hex);
+            }
+            v = v << 4 | d;
+        }
+        return v;
+    }
+
+    /**
+     * read a big-endian long.
+     * @param data : bytes.
+     * @param offset : first of eight bytes.
+     * @return long
+     */
+    private static long getLong(byte[] data, int offset) {
+        long v = 0;
+        for (int i = offset; i < offset + Long.BYTES; i += 1) {
+            v = v << 8 | (data[i] & 0xFF);
+        }
+        return v;
+    }
+
+    /**
+     * write the low LEN bytes of V big-endian.
+     * @param data : destination.
+     * @param offset : first byte.
+     * @param v : value.
+     * @param len : number of bytes.
+     */
+    private static void putLong(byte[] data, int offset, long v, int len) {
+        for (int i = offset + len - 1; i >= offset; i -= 1) {
+            data[i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Storage of objects (blobs, trees and commits).  New objects are
+ *  loose: a file named by the SHA-1 of its uncompressed contents,
+ *  holding those contents as a zlib stream.  Loose objects are sharded
+ *  by the first two hex digits of their hash, so object ID of a kind
+ *  lives at FOLDER/ID[0..2]/ID[2..].txt.  The
+ *  compression level comes from the compression.level setting.
+ *  Objects are written to a temporary file and moved into place, so a
+ *  reader never sees a partial object.  gc moves loose objects into
+ *  packs (see Pack); reads look for a loose object first and then in
+ *  the packs.
+ *  @author Michelle Wu
+ */
+class ObjectStore {
+
+    /** Size of the buffers used to stream objects. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** kind of blobs. */
+    static final char BLOB = 'b';
+
+    /** kind of trees. */
+    static final char TREE = 't';
+
+    /** kind of commits. */
+    static final char COMMIT = 'c';
+
+    /** Main metadata folder. /gitlet/ in file directory. */
+    private static final File GITLET_FOLDER =
+            new File(System.getProperty("user.dir"), ".gitlet");
+
+    /** Blob folder. /.gitlet/.blobs/ in directory. */
+    private static final File BLOB_FOLDER =
+            new File(GITLET_FOLDER, ".blobs");
+
+    /** Tree folder. /.gitlet/.trees/ in directory. */
+    private static final File TREE_FOLDER =
+            new File(GITLET_FOLDER, ".trees");
+
+    /** Commit folder. /.gitlet/.commits/ in directory. */
+    private static final File COMMIT_FOLDER =
+            new File(GITLET_FOLDER, ".commits");
+
+    /**
+     * get the folder of loose objects of type KIND.
+     * @param kind : BLOB, TREE or COMMIT.
+     * @return File
+     */
+    static File folder(char kind) {
+        switch (kind) {
+        case BLOB:
+            return BLOB_FOLDER;
+        case TREE:
+            return TREE_FOLDER;
+        case COMMIT:
+            return COMMIT_FOLDER;
+        default:
+            throw new IllegalArgumentException("unknown object kind " + kind);
+        }
+    }
+
+    /**
+     * get the file of loose object ID of type KIND.
+     * @param kind : object kind.
+     * @param id : object hash.
+     * @return File
+     */
+    static File file(char kind, String id) {
+        return new File(new File(folder(kind), id.substring(0, 2)),
+                id.substring(2) + ".txt");
+    }
+
+    /**
+     * check whether object ID of type KIND is stored, loose or packed.
+     * @param kind : object kind.
+     * @param id : object hash.
+     * @return boolean
+     */
+    static boolean contains(char kind, String id) {
+        return file(kind, id).exists() || Pack.find(kind, id) != null;
+    }
+
+    /**
+     * list the hashes of all stored objects of type KIND.
+     * @param kind : object kind.
+     * @return sorted list of hashes.
+     */
+    static List<String> list(char kind) {
+        return list(kind, "");
+    }
+
+    /**
+     * list the hashes of all stored objects of type KIND that start
+     * with PREFIX.  Given at least two digits, only one shard of the
+     * loose objects is read.
+     * @param kind : object kind.
+     * @param prefix : start of the hashes wanted.
+     * @return sorted list of hashes.
+     */
+    static List<String> list(char kind, String prefix) {
+        TreeSet<String> ids = new TreeSet<>(looseIds(kind, prefix));
+        for (Pack p : Pack.all()) {
+            p.addIds(kind, prefix, ids);
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * list the hashes of loose objects of type KIND.
+     * @param kind : object kind.
+     * @return sorted list of hashes.
+     */
+    static List<String> looseIds(char kind) {
+        return looseIds(kind, "");
+    }
+
+    /**
+     * list the hashes of loose objects of type KIND starting with
+     * PREFIX.
+     * @param kind : object kind.
+     * @param prefix : start of the hashes wanted.
+     * @return sorted list of hashes.
+     */
+    private static List<String> looseIds(char kind, String prefix) {
+        ArrayList<String> ids = new ArrayList<>();
+        String[] shards;
+        if (prefix.length() >= 2) {
+            shards = new String[] {prefix.substring(0, 2)};
+        } else {
+            shards = folder(kind).list();
+            if (shards == null) {
+                return ids;
+            }
+            Arrays.sort(shards);
+        }
+        for (String shard : shards) {
+            if (shard.length() != 2 || (!shard.startsWith(prefix)
+                    && !prefix.startsWith(shard))) {
+                continue;
+            }
+            List<String> names =
+                    Utils.plainFilenamesIn(new File(folder(kind), shard));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                String id = shard
+                        + name.substring(0, name.length() - ".txt".length());
+                if (name.endsWith(".txt") && id.startsWith(prefix)) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * move loose objects stored directly in their kind's folder, as
+     * versions before sharding did, into their shard directories.
+     * @return number of objects moved.
+     */
+    static int migrate() throws IOException {
+        int moved = 0;
+        for (char kind : new char[] {BLOB, TREE, COMMIT}) {
+            List<String> names = Utils.plainFilenamesIn(folder(kind));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                String id = name.substring(0,
+                        Math.max(0, name.length() - ".txt".length()));
+                if (!name.endsWith(".txt")
+                        || id.length() != Utils.UID_LENGTH) {
+                    continue;
+                }
+                File src = new File(folder(kind), name);
+                File dest = file(kind, id);
+                if (dest.exists()) {
+                    src.delete();
+                } else {
+                    dest.getParentFile().mkdirs();
+                    Files.move(src.toPath(), dest.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+                moved += 1;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * store DATA as object ID of type KIND unless it is already there.
+     * @param kind : object kind.
+     * @param id : hash of DATA.
+     * @param data : uncompressed contents.
+     */
+    static void write(char kind, String id, byte[] data) {
+        if (contains(kind, id)) {
+            return;
+        }
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("obj", ".tmp", folder(kind));
+            try (OutputStream out = deflate(tmp)) {
+                out.write(data);
+            }
+            install(tmp, file(kind, id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * store the contents of SRC as an object of type KIND, hashing
+     * them while they are compressed.
+     * @param kind : object kind.
+     * @param src : plain file.
+     * @return object hash.
+     */
+    static String write(char kind, File src) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("obj", ".tmp", folder(kind));
+            MessageDigest md = Sha1.digest();
+            try (InputStream in = new FileInputStream(src);
+                 OutputStream out = new DigestOutputStream(deflate(tmp),
+                         md)) {
+                in.transferTo(out);
+            }
+            String id = Sha1.hex(md.digest());
+            if (Pack.find(kind, id) == null) {
+                install(tmp, file(kind, id));
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * store the contents of SRC as object ID of type KIND unless it
+     * is already there.
+     * @param kind : object kind.
+     * @param src : plain file whose contents hash to ID.
+     * @param id : object hash.
+     */
+    static void write(char kind, File src, String id) {
+        if (contains(kind, id)) {
+            return;
+        }
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("obj", ".tmp", folder(kind));
+            try (InputStream in = new FileInputStream(src);
+                 OutputStream out = deflate(tmp)) {
+                in.transferTo(out);
+            }
+            install(tmp, file(kind, id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * open object ID of type KIND for reading.
+     * @param kind : object kind.
+     * @param id : object hash.
+     * @return stream of the uncompressed contents; the caller closes it.
+     * @throws IOException if there is no such object.
+     */
+    static InputStream open(char kind, String id) throws IOException {
+        File f = file(kind, id);
+        if (f.exists()) {
+            return new InflaterInputStream(new BufferedInputStream(
+                    new FileInputStream(f), BUFFER_SIZE));
+        }
+        Pack p = Pack.find(kind, id);
+        if (p == null) {
+            throw new FileNotFoundException("no object " + id);
+        }
+        return p.open(kind, id);
+    }
+
+    /**
+     * read the whole of object ID of type KIND.
+     * @param kind : object kind.
+     * @param id : object hash.
+     * @return uncompressed contents.
+     */
+    static byte[] read(char kind, String id) {
+        try (InputStream in = open(kind, id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * open a compressing stream onto F at the configured level.
+     * @param f : file to write.
+     * @return OutputStream; closing it also ends the deflater.
+     */
+    private static OutputStream deflate(File f) throws IOException {
+        return deflate(Files.newOutputStream(f.toPath()));
+    }
+
+    /**
+     * wrap OUT in a compressing stream at the configured level.
+     * @param out : stream to write.
+     * @return OutputStream; closing it also ends the deflater and
+     *         closes OUT.
+     */
+    static DeflaterOutputStream deflate(OutputStream out) {
+        Deflater deflater = new Deflater(Config.getInt(Config.COMPRESSION,
+                Deflater.DEFAULT_COMPRESSION));
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * give the finished temporary file TMP the name DEST unless DEST
+     * exists.  Linking fails atomically if another writer got there
+     * first, so each object is created once; file systems without
+     * links fall back to a rename.  Callers delete TMP afterwards.
+     * @param tmp : temporary file in the folder of DEST.
+     * @param dest : object file.
+     */
+    private static void install(File tmp, File dest) throws IOException {
+        if (!dest.exists()) {
+            dest.getParentFile().mkdirs();
+            try {
+                Files.createLink(dest.toPath(), tmp.toPath());
+            } catch (FileAlreadyExistsException excp) {
+                return;
+            } catch (UnsupportedOperationException | IOException excp) {
+                Files.move(tmp.toPath(), dest.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/** A pack: many objects in one file, written by gc (see PackWriter),
+ *  with an index file giving the offset of each object.  A pack
+ *  pack-NAME.pack starts with MAGIC and a version byte; each entry is
+ *  the object kind, a FULL or DELTA flag, the length of its data as a
+ *  long, for DELTA entries the offset of the base entry as a long, and
+ *  then the data: a zlib stream of the contents, or of a Delta against
+ *  the contents of the base.
+ *
+ *  pack-NAME.idx is memory-mapped and searched in place.  After
+ *  INDEX_MAGIC, a version byte and three bytes of padding comes a
+ *  fan-out table of 256 ints, where entry B is the number of objects
+ *  whose hash starts with a byte of at most B.  Then come the raw
+ *  20-byte hashes of all N objects in ascending order, their kinds (N
+ *  bytes) and their pack offsets (N longs), in the same order.  A
+ *  lookup binary-searches the hashes between two fan-out entries,
+ *  comparing the hex digits of the wanted hash with the mapped bytes,
+ *  so it allocates nothing.
+ *  @author Michelle Wu
+ */
+class Pack {
+
+    /** Pack folder. /.gitlet/.packs/ in directory. */
+    static final File PACK_FOLDER =
+            new File(System.getProperty("user.dir"), ".gitlet/.packs");
+
+    /** Magic bytes at the start of a pack. */
+    static final byte[] MAGIC = {'G', 'L', 'P', 'K'};
+
+    /** Magic bytes at the start of a pack index. */
+    static final byte[] INDEX_MAGIC = {'G', 'L', 'P', 'I'};
+
+    /** Format version of packs. */
+    static final int VERSION = 1;
+
+    /** Format version of pack indexes. */
+    static final int INDEX_VERSION = 2;
+
+    /** Length of the index header. */
+    static final int INDEX_HEADER = 8;
+
+    /** Position of the hashes in the index. */
+    static final int INDEX_IDS = INDEX_HEADER + 256 * Integer.BYTES;
+
+    /** Entry flag: the data is the whole object. */
+    static final int FULL = 0;
+
+    /** Entry flag: the data is a delta against another entry. */
+    static final int DELTA = 1;
+
+    /** Most bytes of rebuilt delta bases kept in memory per pack. */
+    private static final long CACHE_BYTES = 32L << 20;
+
+    /** Packs in PACK_FOLDER; null until first use. */
+    private static List<Pack> packs;
+
+    /** The pack file. */
+    private final File packFile;
+
+    /** Channel on packFile, read with positional reads only. */
+    private final FileChannel channel;
+
+    /** The mapped index. */
+    private final MappedByteBuffer index;
+
+    /** Number of objects in the pack. */
+    private final int count;
+
+    /** Position of the kinds in the index. */
+    private final int kindsStart;
+
+    /** Position of the offsets in the index. */
+    private final int offsetsStart;
+
+    /** Recently rebuilt delta bases, by pack offset. */
+    private final LinkedHashMap<Long, byte[]> cache =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total length of the arrays in cache. */
+    private long cached;
+
+    /**
+     * open the pack NAME.pack and read NAME.idx.
+     * @param name : pack file name without its extension.
+     */
+    private Pack(String name) throws IOException {
+        packFile = new File(PACK_FOLDER, name + ".pack");
+        File idx = new File(PACK_FOLDER, name + ".idx");
+        try (FileChannel ic = FileChannel.open(idx.toPath(),
+                StandardOpenOption.READ)) {
+            index = ic.map(FileChannel.MapMode.READ_ONLY, 0, ic.size());
+        }
+        for (int i = 0; i < INDEX_MAGIC.length; i += 1) {
+            if (index.get(i) != INDEX_MAGIC[i]) {
+                throw new IOException("bad pack index " + idx);
+            }
+        }
+        if (index.get(INDEX_MAGIC.length) != INDEX_VERSION) {
+            throw new IOException("unsupported pack index version " + idx);
+        }
+        count = index.getInt(INDEX_IDS - Integer.BYTES);
+        kindsStart = INDEX_IDS + count * Encoder.ID_BYTES;
+        offsetsStart = kindsStart + count;
+        if (index.capacity() != offsetsStart + (long) count * Long.BYTES) {
+            throw new IOException("truncated pack index " + idx);
+        }
+        channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * get all packs, opening them on first use.
+     * @return list of packs.
+     */
+    static synchronized List<Pack> all() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(PACK_FOLDER);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        try {
+                            packs.add(new Pack(name.substring(0,
+                                    name.length() - ".idx".length())));
+                        } catch (IOException excp) {
+                            throw new IllegalArgumentException(
+                                    excp.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /**
+     * close all open packs so that they are found again on next use.
+     */
+    static synchronized void reload() {
+        if (packs != null) {
+            for (Pack p : packs) {
+                try {
+                    p.channel.close();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        packs = null;
+    }
+
+    /**
+     * find the pack holding object ID of type KIND.
+     * @param kind : object kind.
+     * @param id : object hash.
+     * @return Pack, or null if no pack has ID as an object of KIND.
+     */
+    static Pack find(char kind, String id) {
+        for (Pack p : all()) {
+            int pos = p.indexOf(id);
+            if (pos >= 0 && p.kindAt(pos) == kind) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * find the position of object ID in the index.
+     * @param id : object hash as 40 hex digits.
+     * @return position, or -1 if ID is not in this pack.
+     */
+    int indexOf(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        int first = hexByte(id, 0);
+        if (first < 0) {
+            return -1;
+        }
+        int lo = first == 0 ? 0
+                : index.getInt(INDEX_HEADER + (first - 1) * Integer.BYTES);
+        int hi = index.getInt(INDEX_HEADER + first * Integer.BYTES);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(mid, id);
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * compare the hash at position POS of the index with ID.
+     * @param pos : index position.
+     * @param id : object hash as 40 hex digits.
+     * @return negative, zero or positive as the hash at POS is less
+     *         than, equal to or greater than ID.
+     */
+    private int compare(int pos, String id) {
+        int start = INDEX_IDS + pos * Encoder.ID_BYTES;
+        for (int j = 0; j < Encoder.ID_BYTES; j += 1) {
+            int diff = (index.get(start + j) & 0xFF) - hexByte(id, j);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * get byte J of the hash ID.
+     * @param id : object hash as 40 hex digits.
+     * @param j : byte number.
+     * @return value of hex digits 2J and 2J+1, or a negative number if
+     *         they are not hex digits.
+     */
+    private static int hexByte(String id, int j) {
+        int hi = Character.digit(id.charAt(2 * j), 16);
+        int lo = Character.digit(id.charAt(2 * j + 1), 16);
+        return hi < 0 || lo < 0 ? -1 - 0xFF : hi << 4 | lo;
+    }
+
+    /**
+     * get the pack file.
+     * @return File
+     */
+    File file() {
+        return packFile;
+    }
+
+    /**
+     * add the hashes of all objects of type KIND in this pack that
+     * start with PREFIX to IDS.
+     * @param kind : object kind.
+     * @param prefix : start of the hashes wanted.
+     * @param ids : collection being filled.
+     */
+    void addIds(char kind, String prefix, Collection<String> ids) {
+        int lo = 0;
+        int hi = count;
+        if (prefix.length() >= 2) {
+            int first = hexByte(prefix, 0);
+            if (first < 0) {
+                return;
+            }
+            lo = first == 0 ? 0
+                    : index.getInt(INDEX_HEADER + (first - 1) * Integer.BYTES);
+            hi = index.getInt(INDEX_HEADER + first * Integer.BYTES);
+        }
+        byte[] raw = new byte[Encoder.ID_BYTES];
+        for (int i = lo; i < hi; i += 1) {
+            if (kindAt(i) == kind) {
+                int start = INDEX_IDS + i * Encoder.ID_BYTES;
+                for (int j = 0; j < raw.length; j += 1) {
+                    raw[j] = index.get(start + j);
+                }
+                String id = Sha1.hex(raw);
+                if (id.startsWith(prefix)) {
+                    ids.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * get the kind of the object at position POS of the index.
+     * @param pos : index position.
+     * @return object kind.
+     */
+    private char kindAt(int pos) {
+        return (char) index.get(kindsStart + pos);
+    }
+
+    /**
+     * open object ID of type KIND, which must be in this pack.
+     * @param kind : object kind.
+     * @param id : object hash.
+     * @return stream of the contents; the caller closes it.
+     * @throws IOException if this pack has no such object.
+     */
+    InputStream open(char kind, String id) throws IOException {
+        int pos = indexOf(id);
+        if (pos < 0 || kindAt(pos) != kind) {
+            throw new FileNotFoundException("no object " + id);
+        }
+        long offset = index.getLong(offsetsStart + pos * Long.BYTES);
+        ByteBuffer header = readHeader(offset);
+        header.get();
+        if (header.get() == FULL) {
+            long length = header.getLong();
+            return new InflaterInputStream(new BufferedInputStream(
+                    new ChannelInputStream(offset + header.position(), length),
+                    ObjectStore.BUFFER_SIZE));
+        }
+        return new ByteArrayInputStream(rebuild(offset));
+    }
+
+    /**
+     * read the whole contents of the entry at OFFSET, applying deltas.
+     * @param offset : pack offset of an entry.
+     * @return contents.
+     */
+    private byte[] rebuild(long offset) throws IOException {
+        synchronized (cache) {
+            byte[] hit = cache.get(offset);
+            if (hit != null) {
+                return hit;
+            }
+        }
+        ByteBuffer header = readHeader(offset);
+        header.get();
+        int flag = header.get();
+        long length = header.getLong();
+        long base = flag == DELTA ? header.getLong() : -1;
+        byte[] data;
+        try (InputStream in = new InflaterInputStream(new ChannelInputStream(
+                offset + header.position(), length))) {
+            data = in.readAllBytes();
+        }
+        if (flag == DELTA) {
+            data = Delta.apply(rebuild(base), data);
+        }
+        synchronized (cache) {
+            cache.put(offset, data);
+            cached += data.length;
+            Iterator<byte[]> it = cache.values().iterator();
+            while (cached > CACHE_BYTES && it.hasNext()) {
+                cached -= it.next().length;
+                it.remove();
+            }
+        }
+        return data;
+    }
+
+    /**
+     * read the header of the entry at OFFSET.
+     * @param offset : pack offset of an entry.
+     * @return buffer positioned at the start of the header, whose
+     *         position after reading the header is its length.
+     */
+    private ByteBuffer readHeader(long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(2 + 2 * Long.BYTES);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                break;
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /** An InputStream over part of the pack file, using positional
+     *  reads so that several threads can read the pack at once. */
+    private class ChannelInputStream extends InputStream {
+
+        /** Next position to read. */
+        private long pos;
+
+        /** Position just past the last byte to read. */
+        private final long end;
+
+        /** A stream over LENGTH bytes at position START. */
+        ChannelInputStream(long start, long length) {
+            pos = start;
+            end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= end) {
+                return -1;
+            }
+            len = (int) Math.min(len, end - pos);
+            int n = channel.read(ByteBuffer.wrap(b, off, len), pos);
+            if (n > 0) {
+                pos += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Writes every stored object into a single new pack (the gc command).
+ *  Versions of the same path are stored as deltas against the version
+ *  before them, in commit order, up to a chain depth of MAX_DEPTH.
+ *  Afterwards the loose objects and the old packs are deleted.
+ *  @author Michelle Wu
+ */
+class PackWriter {
+
+    /** Longest chain of deltas that must be applied to read an object. */
+    static final int MAX_DEPTH = 50;
+
+    /** Largest object considered for delta compression; bigger ones
+     *  are copied into the pack as a stream. */
+    static final int DELTA_LIMIT = 16 << 20;
+
+    /** Channel on the pack being written. */
+    private final FileChannel out;
+
+    /** key: hash of each object written; value: pack offset. */
+    private final TreeMap<String, Long> offsets = new TreeMap<>();
+
+    /** key: hash of each object written; value: object kind. */
+    private final HashMap<String, Character> kinds = new HashMap<>();
+
+    /** key: hash of each object written; value: its delta chain depth. */
+    private final HashMap<String, Integer> depths = new HashMap<>();
+
+    /**
+     * a writer appending to OUT.
+     * @param out : channel on an empty file.
+     */
+    private PackWriter(FileChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * pack all loose and packed objects into one new pack.
+     * @return number of objects packed.
+     */
+    static int repack() throws IOException {
+        Pack.PACK_FOLDER.mkdir();
+        List<Pack> old = new ArrayList<>(Pack.all());
+        File tmp = File.createTempFile("pack", ".tmp", Pack.PACK_FOLDER);
+        PackWriter w;
+        try (FileChannel ch = FileChannel.open(tmp.toPath(),
+                StandardOpenOption.WRITE)) {
+            w = new PackWriter(ch);
+            w.writeAll();
+        }
+        String name = "pack-" + Utils.sha1(String.join("",
+                w.offsets.keySet()));
+        File pack = new File(Pack.PACK_FOLDER, name + ".pack");
+        Files.move(tmp.toPath(), pack.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        w.writeIndex(new File(Pack.PACK_FOLDER, name + ".idx"));
+        Pack.reload();
+
+        for (char kind : new char[] {ObjectStore.COMMIT, ObjectStore.TREE,
+                                     ObjectStore.BLOB}) {
+            for (String id : ObjectStore.looseIds(kind)) {
+                if (w.offsets.containsKey(id)) {
+                    File f = ObjectStore.file(kind, id);
+                    f.delete();
+                    f.getParentFile().delete();
+                }
+            }
+        }
+        for (Pack p : old) {
+            if (!p.file().equals(pack)) {
+                String base = p.file().getPath();
+                base = base.substring(0, base.length() - ".pack".length());
+                new File(base + ".idx").delete();
+                p.file().delete();
+            }
+        }
+        Pack.reload();
+        return w.offsets.size();
+    }
+
+    /**
+     * write the header and every object.
+     */
+    private void writeAll() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Pack.MAGIC.length + 1);
+        header.put(Pack.MAGIC).put((byte) Pack.VERSION).flip();
+        out.write(header);
+
+        List<String> commits = ObjectStore.list(ObjectStore.COMMIT);
+        for (String id : commits) {
+            writeFull(ObjectStore.COMMIT, id);
+        }
+        for (String id : ObjectStore.list(ObjectStore.TREE)) {
+            writeFull(ObjectStore.TREE, id);
+        }
+        for (LinkedHashSet<String> chain : pathHistories(commits).values()) {
+            writeChain(chain);
+        }
+        for (String id : ObjectStore.list(ObjectStore.BLOB)) {
+            if (!offsets.containsKey(id)) {
+                writeFull(ObjectStore.BLOB, id);
+            }
+        }
+    }
+
+    /**
+     * collect, for each path, the blobs it held in successive commits.
+     * @param commits : hashes of all commits.
+     * @return key: path; value: distinct blob hashes in commit order.
+     */
+    private static TreeMap<String, LinkedHashSet<String>> pathHistories(
+            List<String> commits) {
+        ArrayList<Commit> ordered = new ArrayList<>();
+        for (String id : commits) {
+            ordered.add(Commit.fromFile(id));
+        }
+        ordered.sort(Comparator.comparing(Commit::getTime));
+        TreeMap<String, LinkedHashSet<String>> result = new TreeMap<>();
+        HashSet<String> seen = new HashSet<>();
+        for (Commit c : ordered) {
+            walk(c.tree(), "", seen, result);
+        }
+        return result;
+    }
+
+    /**
+     * add the blobs under tree ID, at path PREFIX, to RESULT, skipping
+     * trees already in SEEN.
+     * @param id : tree hash.
+     * @param prefix : path of the tree followed by '/', or "".
+     * @param seen : trees already walked.
+     * @param result : histories being filled.
+     */
+    private static void walk(String id, String prefix, HashSet<String> seen,
+                             TreeMap<String, LinkedHashSet<String>> result) {
+        if (!seen.add(prefix + id)) {
+            return;
+        }
+        Tree t = Tree.fromFile(id);
+        for (Map.Entry<String, String> e : t.blobs().entrySet()) {
+            result.computeIfAbsent(prefix + e.getKey(),
+                    k -> new LinkedHashSet<>()).add(e.getValue());
+        }
+        for (Map.Entry<String, String> e : t.trees().entrySet()) {
+            walk(e.getValue(), prefix + e.getKey() + "/", seen, result);
+        }
+    }
+
+    /**
+     * write the blobs of CHAIN, each as a delta against the one before
+     * it where that is worthwhile.
+     * @param chain : blob hashes of one path in commit order.
+     */
+    private void writeChain(LinkedHashSet<String> chain) throws IOException {
+        String prevId = null;
+        byte[] prev = null;
+        for (String id : chain) {
+            byte[] data = readSmall(id);
+            if (!offsets.containsKey(id)) {
+                byte[] delta = null;
+                if (data != null && prev != null
+                        && depths.get(prevId) < MAX_DEPTH) {
+                    delta = Delta.create(prev, data);
+                    if (delta.length > data.length / 2) {
+                        delta = null;
+                    }
+                }
+                if (delta != null) {
+                    writeDelta(id, prevId, delta);
+                } else {
+                    writeFull(ObjectStore.BLOB, id);
+                }
+            }
+            prevId = id;
+            prev = data;
+        }
+    }
+
+    /**
+     * read blob ID if it is no longer than DELTA_LIMIT.
+     * @param id : blob hash.
+     * @return contents, or null if the blob is too big.
+     */
+    private static byte[] readSmall(String id) throws IOException {
+        try (InputStream in = ObjectStore.open(ObjectStore.BLOB, id)) {
+            byte[] data = in.readNBytes(DELTA_LIMIT + 1);
+            return data.length > DELTA_LIMIT ? null : data;
+        }
+    }
+
+    /**
+     * write object ID of type KIND as a FULL entry, streaming it.
+     * @param kind : object kind.
+     * @param id : object hash.
+     */
+    private void writeFull(char kind, String id) throws IOException {
+        long start = out.position();
+        writeHeader(kind, Pack.FULL, 0, -1);
+        long dataStart = out.position();
+        try (InputStream in = ObjectStore.open(kind, id);
+             OutputStream z = ObjectStore.deflate(new EntryOutputStream())) {
+            in.transferTo(z);
+        }
+        patchLength(start, out.position() - dataStart);
+        record(kind, id, start, 0);
+    }
+
+    /**
+     * write blob ID as a DELTA entry against blob BASE.
+     * @param id : blob hash.
+     * @param base : hash of a blob already written.
+     * @param delta : delta from BASE to ID.
+     */
+    private void writeDelta(String id, String base, byte[] delta)
+            throws IOException {
+        long start = out.position();
+        writeHeader(ObjectStore.BLOB, Pack.DELTA, 0, offsets.get(base));
+        long dataStart = out.position();
+        try (OutputStream z = ObjectStore.deflate(new EntryOutputStream())) {
+            z.write(delta);
+        }
+        patchLength(start, out.position() - dataStart);
+        record(ObjectStore.BLOB, id, start, depths.get(base) + 1);
+    }
+
+    /** A stream appending to the pack at its current position.
+     *  Closing it leaves the pack open. */
+    private class EntryOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        }
+    }
+
+    /**
+     * write an entry header.
+     * @param kind : object kind.
+     * @param flag : Pack.FULL or Pack.DELTA.
+     * @param length : data length, patched later.
+     * @param base : offset of the delta base, or -1 for FULL entries.
+     */
+    private void writeHeader(char kind, int flag, long length, long base)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(2 + 2 * Long.BYTES);
+        buf.put((byte) kind).put((byte) flag).putLong(length);
+        if (base >= 0) {
+            buf.putLong(base);
+        }
+        buf.flip();
+        out.write(buf);
+    }
+
+    /**
+     * set the data length in the header of the entry at START.
+     * @param start : pack offset of the entry.
+     * @param length : data length.
+     */
+    private void patchLength(long start, long length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+        buf.putLong(length).flip();
+        out.write(buf, start + 2);
+    }
+
+    /**
+     * remember that object ID was written.
+     * @param kind : object kind.
+     * @param id : object hash.
+     * @param offset : pack offset.
+     * @param depth : delta chain depth.
+     */
+    private void record(char kind, String id, long offset, int depth) {
+        offsets.put(id, offset);
+        kinds.put(id, kind);
+        depths.put(id, depth);
+    }
+
+    /**
+     * write the index of the objects written to IDX.
+     * @param idx : index file.
+     */
+    private void writeIndex(File idx) throws IOException {
+        File tmp = File.createTempFile("idx", ".tmp", Pack.PACK_FOLDER);
+        try (DataOutputStream d = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(tmp.toPath())))) {
+            d.write(Pack.INDEX_MAGIC);
+            d.writeByte(Pack.INDEX_VERSION);
+            d.write(new byte[Pack.INDEX_HEADER - Pack.INDEX_MAGIC.length - 1]);
+            int[] fanout = new int[256];
+            for (String id : offsets.keySet()) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+            }
+            int total = 0;
+            for (int b = 0; b < fanout.length; b += 1) {
+                total += fanout[b];
+                d.writeInt(total);
+            }
+            for (String id : offsets.keySet()) {
+                d.write(Encoder.rawId(id));
+            }
+            for (String id : offsets.keySet()) {
+                d.writeByte(kinds.get(id));
+            }
+            for (long offset : offsets.values()) {
+                d.writeLong(offset);
+            }
+        }
+        Files.move(tmp.toPath(), idx.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,702 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** A map from file paths to object ids kept in a few flat arrays
+ *  instead of one node, two strings and an id string per entry.
+ *  Entries are sorted by the UTF-8 bytes of their paths; each path is
+ *  stored as the length of the prefix it shares with the path before
+ *  it and the rest of its bytes, with a full path every RESTART entries
+ *  so that lookups can binary-search those and scan a few entries
+ *  from there.  Ids are stored raw, 20 bytes each.
+ *
+ *  Changes collect in a small TreeMap and are merged into the arrays
+ *  once there are enough of them, or before the map is iterated.  As
+ *  a Map, values are 40-digit hex ids, made when asked for; id() and
+ *  put(String, ObjectId) avoid making them.
+ *  @author Michelle Wu
+ */
+class PathMap extends AbstractMap<String, String> {
+
+    /** A full path is stored once every RESTART entries. */
+    private static final int RESTART = 16;
+
+    /** Length of a raw id. */
+    private static final int ID = Encoder.ID_BYTES;
+
+    /** Number of changes held back before merging them in, beyond
+     *  a sixteenth of the size. */
+    private static final int PENDING = 64;
+
+    /** Paths of the merged entries, prefix-compressed. */
+    private byte[] keys = new byte[0];
+
+    /** Offset in keys of every RESTART'th merged entry. */
+    private int[] restarts = new int[0];
+
+    /** Raw ids of the merged entries. */
+    private byte[] ids = new byte[0];
+
+    /** Number of merged entries. */
+    private int count;
+
+    /** Length of the longest merged path in bytes. */
+    private int longest;
+
+    /** Changes not yet merged; a null id marks a removed path. */
+    private TreeMap<String, ObjectId> pending = newPending();
+
+    /** Number of entries, counting pending changes. */
+    private int size;
+
+    /**
+     * an empty map.
+     */
+    PathMap() {
+    }
+
+    /**
+     * a copy of MAP, sharing its merged entries, which are never
+     * changed in place.
+     * @param map : map to copy.
+     */
+    PathMap(PathMap map) {
+        keys = map.keys;
+        restarts = map.restarts;
+        ids = map.ids;
+        count = map.count;
+        longest = map.longest;
+        pending.putAll(map.pending);
+        size = map.size;
+    }
+
+    /**
+     * a map with the entries of MAP.
+     * @param map : key: path; value: hex id.
+     */
+    PathMap(Map<String, String> map) {
+        putAll(map);
+    }
+
+    /**
+     * get the id of PATH.
+     * @param path : file name.
+     * @return ObjectId, or null if PATH is not in this map.
+     */
+    ObjectId id(String path) {
+        if (pending.containsKey(path)) {
+            return pending.get(path);
+        }
+        int i = indexOf(path.getBytes(StandardCharsets.UTF_8));
+        return i < 0 ? null : ObjectId.of(ids, i * ID);
+    }
+
+    /**
+     * map PATH to ID.
+     * @param path : file name.
+     * @param id : object id.
+     * @return the previous id of PATH, or null.
+     */
+    ObjectId put(String path, ObjectId id) {
+        if (id == null) {
+            throw new NullPointerException();
+        }
+        ObjectId old = id(path);
+        if (old == null) {
+            size += 1;
+        }
+        pending.put(path, id);
+        mergeIfFull();
+        return old;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        ObjectId id = id((String) key);
+        return id == null ? null : id.toString();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && id((String) key) != null;
+    }
+
+    @Override
+    public String put(String path, String id) {
+        ObjectId old = put(path, ObjectId.of(id));
+        return old == null ? null : old.toString();
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String path = (String) key;
+        ObjectId old = id(path);
+        if (old == null) {
+            return null;
+        }
+        size -= 1;
+        pending.put(path, null);
+        mergeIfFull();
+        return old.toString();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        keys = new byte[0];
+        restarts = new int[0];
+        ids = new byte[0];
+        count = 0;
+        longest = 0;
+        pending = newPending();
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                merge();
+                return new Entries();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * write this map as Encoder.writeIdMap would.
+     * @param e : destination.
+     */
+    void encode(Encoder e) {
+        merge();
+        e.writeVarint(count);
+        Cursor c = new Cursor();
+        String prev = "";
+        while (c.next()) {
+            String path = c.path();
+            e.writeKey(prev, path);
+            e.writeId(ObjectId.of(ids, c.index * ID));
+            prev = path;
+        }
+    }
+
+    /**
+     * read a map written by encode or by Encoder.writeIdMap.
+     * @param d : source.
+     * @return PathMap
+     */
+    static PathMap decode(Decoder d) {
+        int n = d.readInt();
+        Builder b = new Builder();
+        String prev = "";
+        for (int i = 0; i < n; i += 1) {
+            String path = d.readKey(prev);
+            b.add(path, d.readObjectId());
+            prev = path;
+        }
+        return b.build();
+    }
+
+    /**
+     * merge the pending changes once there are too many to hold back.
+     */
+    private void mergeIfFull() {
+        if (pending.size() > PENDING + count / 16) {
+            merge();
+        }
+    }
+
+    /**
+     * merge the pending changes into the arrays.
+     */
+    private void merge() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Appender out = new Appender(size);
+        Cursor c = new Cursor();
+        boolean more = c.next();
+        for (Map.Entry<String, ObjectId> e : pending.entrySet()) {
+            byte[] path = e.getKey().getBytes(StandardCharsets.UTF_8);
+            int cmp = -1;
+            while (more && (cmp = c.compareTo(path)) < 0) {
+                out.add(c.path, c.length, c.ids, c.index * ID);
+                more = c.next();
+            }
+            if (more && cmp == 0) {
+                more = c.next();
+            }
+            if (e.getValue() != null) {
+                out.add(path, path.length, e.getValue().toBytes(), 0);
+            }
+        }
+        for (; more; more = c.next()) {
+            out.add(c.path, c.length, c.ids, c.index * ID);
+        }
+        out.finish(this);
+        pending = newPending();
+    }
+
+    /**
+     * make an empty map of changes, in the order of the merged entries.
+     * @return TreeMap
+     */
+    private static TreeMap<String, ObjectId> newPending() {
+        return new TreeMap<>(PathMap::compare);
+    }
+
+    /**
+     * compare paths by code point, which is the order of their UTF-8
+     * bytes.
+     * @param a : a path.
+     * @param b : another path.
+     * @return negative, zero or positive.
+     */
+    private static int compare(String a, String b) {
+        int i = 0, j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i), y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * find a merged entry.
+     * @param path : UTF-8 bytes of a path.
+     * @return its index, or -1 if it is not among the merged entries.
+     */
+    private int indexOf(byte[] path) {
+        int lo = 0, hi = restarts.length - 1, r = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long v = varint(keys, restarts[mid] + 1);
+            int len = (int) (v >>> 32), start = (int) v;
+            if (Arrays.compareUnsigned(keys, start, start + len,
+                    path, 0, path.length) <= 0) {
+                r = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (r < 0) {
+            return -1;
+        }
+        int pos = restarts[r];
+        int matched = 0;
+        for (int i = r * RESTART; i < Math.min(count, (r + 1) * RESTART);
+             i += 1) {
+            long v = varint(keys, pos);
+            int shared = (int) (v >>> 32);
+            v = varint(keys, (int) v);
+            int len = (int) (v >>> 32);
+            pos = (int) v;
+            if (shared < matched) {
+                return -1;
+            } else if (shared == matched) {
+                int k = 0;
+                while (k < len && matched < path.length
+                       && keys[pos + k] == path[matched]) {
+                    k += 1;
+                    matched += 1;
+                }
+                if (k == len && matched == path.length) {
+                    return i;
+                } else if (k < len && (matched == path.length
+                        || (keys[pos + k] & 0xFF) > (path[matched] & 0xFF))) {
+                    return -1;
+                }
+            }
+            pos += len;
+        }
+        return -1;
+    }
+
+    /**
+     * read the varint at POS in DATA.
+     * @param data : bytes.
+     * @param pos : first byte.
+     * @return the value in the high half and the next position in the
+     *         low half.
+     */
+    private static long varint(byte[] data, int pos) {
+        int v = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos++];
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (long) v << 32 | pos;
+            }
+        }
+    }
+
+    /**
+     * write non-negative V as a varint at POS in DATA.
+     * @param data : destination with room for five bytes.
+     * @param pos : first byte.
+     * @param v : value.
+     * @return the next position.
+     */
+    private static int putVarint(byte[] data, int pos, int v) {
+        while ((v & ~0x7F) != 0) {
+            data[pos++] = (byte) (v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        data[pos++] = (byte) v;
+        return pos;
+    }
+
+    /** Walks the merged entries in order, rebuilding each path. */
+    private class Cursor {
+
+        /** The merged paths being walked. */
+        private final byte[] data = keys;
+
+        /** Their ids. */
+        private final byte[] ids = PathMap.this.ids;
+
+        /** Number of entries being walked. */
+        private final int end = count;
+
+        /** Bytes of the current path. */
+        private final byte[] path = new byte[longest];
+
+        /** Length of the current path. */
+        private int length;
+
+        /** Index of the current entry. */
+        private int index = -1;
+
+        /** Position in data of the next entry. */
+        private int pos;
+
+        /**
+         * move to the next entry.
+         * @return false if there are no more.
+         */
+        boolean next() {
+            if (index + 1 >= end) {
+                return false;
+            }
+            index += 1;
+            long v = varint(data, pos);
+            int shared = (int) (v >>> 32);
+            v = varint(data, (int) v);
+            int len = (int) (v >>> 32);
+            pos = (int) v;
+            System.arraycopy(data, pos, path, shared, len);
+            length = shared + len;
+            pos += len;
+            return true;
+        }
+
+        /**
+         * compare the current path with OTHER.
+         * @param other : UTF-8 bytes of a path.
+         * @return negative, zero or positive.
+         */
+        int compareTo(byte[] other) {
+            return Arrays.compareUnsigned(path, 0, length,
+                    other, 0, other.length);
+        }
+
+        /**
+         * get the current path.
+         * @return String
+         */
+        String path() {
+            return new String(path, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Iterates over the merged entries; removals become pending. */
+    private class Entries implements Iterator<Map.Entry<String, String>> {
+
+        /** Position in the entries. */
+        private final Cursor cursor = new Cursor();
+
+        /** Whether the cursor has been moved to the next entry. */
+        private boolean ready;
+
+        /** Whether there is a next entry. */
+        private boolean more;
+
+        /** Path of the entry returned last, or null. */
+        private String last;
+
+        @Override
+        public boolean hasNext() {
+            if (!ready) {
+                more = cursor.next();
+                ready = true;
+            }
+            return more;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            last = cursor.path();
+            return new Entry(last, cursor.ids, cursor.index * ID);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            PathMap.this.remove(last);
+            last = null;
+        }
+    }
+
+    /** An unmodifiable entry whose hex id is made only if it is asked
+     *  for. */
+    private static class Entry implements Map.Entry<String, String> {
+
+        /** The path. */
+        private final String path;
+
+        /** Holds the raw id. */
+        private final byte[] ids;
+
+        /** Position of the id in ids. */
+        private final int offset;
+
+        /**
+         * the entry for PATH, whose id is at OFFSET in IDS.
+         * @param path : file name.
+         * @param ids : raw ids.
+         * @param offset : position of the id.
+         */
+        Entry(String path, byte[] ids, int offset) {
+            this.path = path;
+            this.ids = ids;
+            this.offset = offset;
+        }
+
+        @Override
+        public String getKey() {
+            return path;
+        }
+
+        @Override
+        public String getValue() {
+            return Sha1.hex(ids, offset, ID);
+        }
+
+        @Override
+        public String setValue(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) obj;
+            return getKey().equals(e.getKey())
+                    && getValue().equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /** Builds a map from entries given in any order. */
+    static class Builder {
+
+        /** UTF-8 bytes of the paths added. */
+        private final ArrayList<byte[]> paths = new ArrayList<>();
+
+        /** Raw ids of the paths added. */
+        private byte[] ids = new byte[ID * RESTART];
+
+        /** Whether the paths were added in order. */
+        private boolean sorted = true;
+
+        /**
+         * add an entry; a later entry for the same path wins.
+         * @param path : file name.
+         * @param id : object id.
+         */
+        void add(String path, ObjectId id) {
+            byte[] b = path.getBytes(StandardCharsets.UTF_8);
+            int n = paths.size();
+            if (n > 0 && Arrays.compareUnsigned(paths.get(n - 1), b) >= 0) {
+                sorted = false;
+            }
+            if ((n + 1) * ID > ids.length) {
+                ids = Arrays.copyOf(ids, 2 * ids.length);
+            }
+            id.copyTo(ids, n * ID);
+            paths.add(b);
+        }
+
+        /**
+         * make the map.
+         * @return PathMap
+         */
+        PathMap build() {
+            int n = paths.size();
+            Integer[] order = null;
+            if (!sorted) {
+                order = new Integer[n];
+                for (int i = 0; i < n; i += 1) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (x, y) -> {
+                    int c = Arrays.compareUnsigned(paths.get(x),
+                            paths.get(y));
+                    return c != 0 ? c : Integer.compare(y, x);
+                });
+            }
+            Appender out = new Appender(n);
+            byte[] prev = null;
+            for (int k = 0; k < n; k += 1) {
+                int i = order == null ? k : order[k];
+                byte[] b = paths.get(i);
+                if (prev == null || !Arrays.equals(prev, b)) {
+                    out.add(b, b.length, ids, i * ID);
+                }
+                prev = b;
+            }
+            PathMap m = new PathMap();
+            out.finish(m);
+            return m;
+        }
+    }
+
+    /** Writes entries, given in order, into fresh arrays. */
+    private static class Appender {
+
+        /** Paths written so far. */
+        private byte[] keys;
+
+        /** Bytes of keys in use. */
+        private int used;
+
+        /** Offsets of the full paths. */
+        private int[] restarts;
+
+        /** Ids written so far. */
+        private byte[] ids;
+
+        /** Number of entries written. */
+        private int count;
+
+        /** The path written last. */
+        private byte[] prev = new byte[0];
+
+        /** Length of prev in use. */
+        private int prevLength;
+
+        /** Length of the longest path. */
+        private int longest;
+
+        /**
+         * an appender with room for about N entries.
+         * @param n : expected number of entries.
+         */
+        Appender(int n) {
+            keys = new byte[Math.max(64, 16 * n)];
+            restarts = new int[n / RESTART + 1];
+            ids = new byte[Math.max(1, n) * ID];
+        }
+
+        /**
+         * write an entry after those already written.
+         * @param path : bytes of the path.
+         * @param len : length of the path in PATH.
+         * @param src : holds the raw id.
+         * @param offset : position of the id in SRC.
+         */
+        void add(byte[] path, int len, byte[] src, int offset) {
+            int shared = 0;
+            if (count % RESTART == 0) {
+                if (count / RESTART == restarts.length) {
+                    restarts = Arrays.copyOf(restarts, 2 * restarts.length);
+                }
+                restarts[count / RESTART] = used;
+            } else {
+                int limit = Math.min(prevLength, len);
+                while (shared < limit && prev[shared] == path[shared]) {
+                    shared += 1;
+                }
+            }
+            if (used + 10 + len - shared > keys.length) {
+                keys = Arrays.copyOf(keys,
+                        Math.max(2 * keys.length, used + 10 + len));
+            }
+            used = putVarint(keys, used, shared);
+            used = putVarint(keys, used, len - shared);
+            System.arraycopy(path, shared, keys, used, len - shared);
+            used += len - shared;
+            if ((count + 1) * ID > ids.length) {
+                ids = Arrays.copyOf(ids, 2 * ids.length);
+            }
+            System.arraycopy(src, offset, ids, count * ID, ID);
+            if (len > prev.length) {
+                prev = Arrays.copyOf(prev, Math.max(len, 2 * prev.length));
+            }
+            System.arraycopy(path, 0, prev, 0, len);
+            prevLength = len;
+            longest = Math.max(longest, len);
+            count += 1;
+        }
+
+        /**
+         * make M hold exactly the entries written, with none pending.
+         * @param m : map to fill.
+         */
+        void finish(PathMap m) {
+            m.keys = Arrays.copyOf(keys, used);
+            m.restarts = Arrays.copyOf(restarts,
+                    (count + RESTART - 1) / RESTART);
+            m.ids = Arrays.copyOf(ids, count * ID);
+            m.count = count;
+            m.longest = longest;
+            m.size = count;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of PathMap, mostly against a TreeMap ordered the same way.
+ *  @author Michelle Wu
+ */
+public class PathMapTest {
+
+    /** Return a map ordered, as a PathMap is, by the UTF-8 bytes of its
+     *  keys. */
+    private static TreeMap<String, String> reference() {
+        return new TreeMap<>((a, b) -> Arrays.compareUnsigned(
+                a.getBytes(StandardCharsets.UTF_8),
+                b.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Return a random hex id made with R. */
+    private static String id(Random r) {
+        byte[] raw = new byte[Encoder.ID_BYTES];
+        r.nextBytes(raw);
+        return ObjectId.of(raw, 0).toString();
+    }
+
+    /** Return one of N paths, some of them sharing long prefixes and
+     *  some not ASCII, chosen with R. */
+    private static String path(Random r, int n) {
+        int k = r.nextInt(n);
+        String[] dirs = {"", "src/", "src/gitlet/", "d\u00e9j\u00e0/",
+                         "\uff21/", "\ud83d\ude00/"};
+        return dirs[k % dirs.length] + "f" + k;
+    }
+
+    /** Return the entries of MAP, in its iteration order. */
+    private static List<Map.Entry<String, String>> entries(
+            Map<String, String> map) {
+        return new ArrayList<>(map.entrySet());
+    }
+
+    /** Return M encoded and decoded again. */
+    private static PathMap roundTrip(PathMap m) {
+        Encoder e = new Encoder('t');
+        m.encode(e);
+        Decoder d = new Decoder(e.toByteArray(), 't');
+        PathMap result = PathMap.decode(d);
+        assertFalse(d.hasMore());
+        return result;
+    }
+
+    /** Basic lookups, replacements and removals. */
+    @Test
+    public void putGetRemove() {
+        Random r = new Random(1);
+        String a = id(r), b = id(r);
+        PathMap m = new PathMap();
+        assertNull(m.put("x", a));
+        assertEquals(a, m.get("x"));
+        assertEquals(ObjectId.of(a), m.id("x"));
+        assertEquals(a, m.put("x", b));
+        assertEquals(ObjectId.of(b), m.put("x", ObjectId.of(a)));
+        assertEquals(1, m.size());
+        assertTrue(m.containsKey("x"));
+        assertFalse(m.containsKey("y"));
+        assertNull(m.get("y"));
+        assertNull(m.get(3));
+        assertNull(m.remove("y"));
+        assertEquals(a, m.remove("x"));
+        assertEquals(0, m.size());
+        assertNull(m.id("x"));
+        assertTrue(m.isEmpty());
+    }
+
+    /** Paths are ordered by their UTF-8 bytes, which differs from the
+     *  order of Java strings for characters beyond U+FFFF. */
+    @Test
+    public void nonAsciiOrder() {
+        String[] paths = {"b", "a/\u00e9", "\uff21", "\ud83d\ude00", "a",
+                          "a/b", "a.txt", "\u00e9"};
+        Random r = new Random(2);
+        PathMap m = new PathMap();
+        for (String p : paths) {
+            m.put(p, id(r));
+        }
+        assertEquals(Arrays.asList("a", "a.txt", "a/b", "a/\u00e9", "b",
+                "\u00e9", "\uff21", "\ud83d\ude00"),
+                new ArrayList<>(m.keySet()));
+        for (String p : paths) {
+            assertTrue(p, m.containsKey(p));
+        }
+    }
+
+    /** Random puts and removes, enough of them to merge many times,
+     *  agree with a TreeMap in lookups, order and size. */
+    @Test
+    public void againstTreeMap() {
+        Random r = new Random(3);
+        PathMap m = new PathMap();
+        TreeMap<String, String> expected = reference();
+        for (int step = 0; step < 20000; step += 1) {
+            String p = path(r, 1500);
+            if (r.nextInt(3) == 0) {
+                assertEquals(expected.remove(p), m.remove(p));
+            } else {
+                String v = id(r);
+                assertEquals(expected.put(p, v), m.put(p, v));
+            }
+            String q = path(r, 1500);
+            assertEquals(expected.get(q), m.get(q));
+            assertEquals(expected.size(), m.size());
+            if (step % 2500 == 0) {
+                assertEquals(entries(expected), entries(m));
+            }
+        }
+        assertEquals(entries(expected), entries(m));
+        assertEquals(expected, m);
+        assertEquals(expected.hashCode(), m.hashCode());
+    }
+
+    /** Removing through the iterator removes from the map. */
+    @Test
+    public void iteratorRemove() {
+        Random r = new Random(4);
+        PathMap m = new PathMap();
+        TreeMap<String, String> expected = reference();
+        for (int i = 0; i < 300; i += 1) {
+            String p = path(r, 300), v = id(r);
+            m.put(p, v);
+            expected.put(p, v);
+        }
+        Iterator<Map.Entry<String, String>> it = m.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey().hashCode() % 2 == 0) {
+                it.remove();
+            }
+        }
+        expected.keySet().removeIf(p -> p.hashCode() % 2 == 0);
+        assertEquals(entries(expected), entries(m));
+        assertEquals(expected.size(), m.size());
+    }
+
+    /** A copy and its original can be changed without affecting each
+     *  other. */
+    @Test
+    public void copies() {
+        Random r = new Random(5);
+        PathMap m = new PathMap();
+        for (int i = 0; i < 500; i += 1) {
+            m.put(path(r, 400), id(r));
+        }
+        TreeMap<String, String> before = reference();
+        before.putAll(m);
+        PathMap copy = new PathMap(m);
+        assertEquals(entries(before), entries(copy));
+        TreeMap<String, String> changed = reference();
+        changed.putAll(before);
+        for (int i = 0; i < 500; i += 1) {
+            String p = path(r, 600);
+            if (i % 3 == 0) {
+                copy.remove(p);
+                changed.remove(p);
+            } else {
+                String v = id(r);
+                copy.put(p, v);
+                changed.put(p, v);
+            }
+        }
+        assertEquals(entries(before), entries(m));
+        assertEquals(entries(changed), entries(copy));
+        m.clear();
+        assertTrue(m.isEmpty());
+        assertEquals(entries(changed), entries(copy));
+        assertEquals(entries(before), entries(new PathMap(before)));
+    }
+
+    /** Entries are read-only and compare like other map entries. */
+    @Test
+    public void readOnlyEntries() {
+        Random r = new Random(6);
+        String v = id(r);
+        PathMap m = new PathMap();
+        m.put("p", v);
+        Map.Entry<String, String> e = m.entrySet().iterator().next();
+        assertEquals(Map.entry("p", v), e);
+        assertEquals(Map.entry("p", v).hashCode(), e.hashCode());
+        assertEquals("p=" + v, e.toString());
+        try {
+            e.setValue(id(r));
+            fail("entry changed");
+        } catch (UnsupportedOperationException excp) {
+            assertEquals(v, m.get("p"));
+        }
+    }
+
+    /** Encoding and decoding gives back the same map, with or without
+     *  pending changes, and empty maps survive too. */
+    @Test
+    public void encodeDecode() {
+        Random r = new Random(7);
+        assertTrue(roundTrip(new PathMap()).isEmpty());
+        PathMap m = new PathMap();
+        for (int i = 0; i < 2000; i += 1) {
+            m.put(path(r, 3000), id(r));
+        }
+        PathMap back = roundTrip(m);
+        assertEquals(entries(m), entries(back));
+        m.put("\ud83d\ude00/new", id(r));
+        m.remove(m.keySet().iterator().next());
+        back = roundTrip(m);
+        assertEquals(entries(m), entries(back));
+        back.put("late", id(r));
+        assertEquals(m.size() + 1, back.size());
+    }
+
+    /** Encoder.writeIdMap writes what decode reads. */
+    @Test
+    public void decodeIdMap() {
+        Random r = new Random(8);
+        TreeMap<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i += 1) {
+            expected.put("f" + i, id(r));
+        }
+        Encoder e = new Encoder('t');
+        e.writeIdMap(expected);
+        PathMap m = PathMap.decode(new Decoder(e.toByteArray(), 't'));
+        assertEquals(expected, m);
+    }
+
+    /** The builder sorts entries given out of order, and a later entry
+     *  for a path wins. */
+    @Test
+    public void builder() {
+        Random r = new Random(9);
+        PathMap.Builder b = new PathMap.Builder();
+        TreeMap<String, String> expected = reference();
+        for (int i = 0; i < 1000; i += 1) {
+            String p = path(r, 700), v = id(r);
+            b.add(p, ObjectId.of(v));
+            expected.put(p, v);
+        }
+        PathMap m = b.build();
+        assertEquals(entries(expected), entries(m));
+        assertEquals(expected.size(), m.size());
+    }
+}
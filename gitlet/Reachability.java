@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Cached sets of the commits reachable from branch tips, as Bitmaps
+ *  of commit-graph positions, kept in .gitlet/reach.txt.  A tip's set
+ *  is built on demand by walking the graph down to the nearest commits
+ *  whose sets are already known, so that extending a branch by one
+ *  commit costs one union.  Positions are only meaningful for the
+ *  graph they were taken from, so the cache is cleared whenever the
+ *  graph is rebuilt.
+ *  @author Michelle Wu
+ */
+class Reachability {
+
+    /** type tag of the cache file. */
+    private static final char KIND = 'm';
+
+    /** Where the cache is saved. */
+    private static final File REACH_FILE =
+            new File(System.getProperty("user.dir"), ".gitlet/reach.txt");
+
+    /** Reachable sets by commit hash. */
+    private final TreeMap<String, Bitmap> sets;
+
+    /** Whether sets has changed since it was read. */
+    private boolean changed;
+
+    /**
+     * a cache holding SETS.
+     * @param sets : reachable sets by commit hash.
+     */
+    private Reachability(TreeMap<String, Bitmap> sets) {
+        this.sets = sets;
+    }
+
+    /**
+     * read the cache, or start an empty one if there is none or it
+     * cannot be read (as when an older version wrote it).
+     * @return Reachability
+     */
+    static Reachability read() {
+        TreeMap<String, Bitmap> sets = new TreeMap<>();
+        if (REACH_FILE.exists()) {
+            try {
+                Decoder d = new Decoder(Utils.readContents(REACH_FILE), KIND);
+                int n = d.readInt();
+                for (int i = 0; i < n; i += 1) {
+                    String id = d.readId();
+                    sets.put(id, Bitmap.decode(d));
+                }
+            } catch (IllegalArgumentException excp) {
+                sets.clear();
+            }
+        }
+        return new Reachability(sets);
+    }
+
+    /**
+     * forget every cached set.
+     */
+    static void clear() {
+        REACH_FILE.delete();
+    }
+
+    /**
+     * get the positions of the commits reachable from commit ID,
+     * including ID itself.  The result must not be modified.
+     * @param g : commit graph containing ID.
+     * @param id : commit hash.
+     * @return Bitmap
+     */
+    Bitmap of(CommitGraph g, String id) {
+        Bitmap result = sets.get(id);
+        if (result != null) {
+            return result;
+        }
+        HashMap<Integer, Bitmap> known = new HashMap<>();
+        for (Map.Entry<String, Bitmap> e : sets.entrySet()) {
+            int pos = g.position(e.getKey());
+            if (pos >= 0) {
+                known.put(pos, e.getValue());
+            }
+        }
+        result = new Bitmap();
+        ArrayDeque<Integer> todo = new ArrayDeque<>();
+        todo.push(g.position(id));
+        while (!todo.isEmpty()) {
+            int c = todo.pop();
+            if (c < 0 || result.contains(c)) {
+                continue;
+            }
+            Bitmap below = known.get(c);
+            if (below != null) {
+                result.or(below);
+                continue;
+            }
+            result.add(c);
+            todo.push(g.parent(c));
+            todo.push(g.mergeParent(c));
+        }
+        sets.put(id, result);
+        changed = true;
+        return result;
+    }
+
+    /**
+     * save the cache, keeping only the sets of TIPS.
+     * @param tips : hashes of the branch heads.
+     */
+    void save(Collection<String> tips) {
+        changed |= sets.keySet().retainAll(tips);
+        if (!changed) {
+            return;
+        }
+        Encoder e = new Encoder(KIND);
+        e.writeVarint(sets.size());
+        for (Map.Entry<String, Bitmap> entry : sets.entrySet()) {
+            e.writeId(entry.getKey());
+            entry.getValue().encode(e);
+        }
+        Utils.writeContents(REACH_FILE, (Object) e.toByteArray());
+        changed = false;
+    }
+}
@@ -1,18 +1,37 @@
 package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayDeque;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.ArrayList;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Michelle Wu
  */
-public class Repo implements Serializable {
+public class Repo {
     /** Current Working Directory. */
     private static File cwd = new File(System.getProperty("user.dir"));
 
@@ -25,17 +44,29 @@ public class Repo implements Serializable {
     /** Blob folder. /.gitlet/.blobs/ in directory. */
     private static File blobFolder = new File(gitletFolder, ".blobs");
 
+    /** Tree folder. /.gitlet/.trees/ in directory. */
+    private static File treeFolder = new File(gitletFolder, ".trees");
+
     /** Staging area of this repo.**/
     private StagingArea stage;
 
+    /** stat cache of tracked working files; read on first use. **/
+    private Index index;
+
+    /** type tag of an encoded repo. **/
+    private static final char KIND = 'r';
+
     /**formatter for log.**/
     private static final DateTimeFormatter TIME_FORMATTER =
             DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy ZZZ");
 
-    /** first commit; same in every repo.**/
-    private Commit first;
+    /** hash of first commit; same in every repo.**/
+    private String first;
+
+    /** hash of current head commit. **/
+    private String headId;
 
-    /** current head commit. **/
+    /** current head commit; loaded from headId by findRepo. **/
     private Commit head;
 
     /** current branch. **/
@@ -66,40 +97,175 @@ public class Repo implements Serializable {
 
     }
 
+    /**
+     * a repo converted from an older version.
+     * @param first : hash of the first commit.
+     * @param headId : hash of the head commit.
+     * @param branch : current branch.
+     * @param branchMap : key: branch name; value: hash of its head.
+     * @param stage : staging area.
+     */
+    Repo(String first, String headId, String branch,
+         TreeMap<String, String> branchMap, StagingArea stage) {
+        this.first = first;
+        this.headId = headId;
+        this.branch = branch;
+        this.branchMap = branchMap;
+        this.stage = stage;
+    }
+
+    /**
+     * reads the fields of a saved repo.
+     * @param d : decoder positioned after the header.
+     */
+    private Repo(Decoder d) {
+        first = d.readId();
+        headId = d.readId();
+        branch = d.readString();
+        branchMap = d.readIdMap();
+    }
+
     /**
      * starting from head commit,
      * make your way back to first commit via parents, ignoring
-     * first parents.
-     * NOT UPDATED FOR MERGE
+     * merge parents.  Options: -n N shows at most N commits, --skip K
+     * leaves out the first K that would be shown, and --since DATE and
+     * --until DATE keep to commits made in that range.  The walk stops
+     * as soon as no further commit can be shown.
+     * @param args : args[1..] = options.
      */
-    public void log() {
-        Commit c = head;
-        while (c != null) {
-            System.out.println("===");
-            System.out.println("commit " + c.hash());
-            System.out.println("Date: " + TIME_FORMATTER.format(c.getTime()));
-            System.out.println(c.getLog());
-            System.out.println();
-            c = c.getParent();
+    public void log(String[] args) {
+        int limit = Integer.MAX_VALUE;
+        int skip = 0;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new GitletException("wrong # of args (log)");
+            }
+            switch (args[i]) {
+            case "-n":
+                limit = parseCount(args[i + 1]);
+                break;
+            case "--skip":
+                skip = parseCount(args[i + 1]);
+                break;
+            case "--since":
+                since = parseDate(args[i + 1], false);
+                break;
+            case "--until":
+                until = parseDate(args[i + 1], true);
+                break;
+            default:
+                throw new GitletException("Unknown option " + args[i] + ".");
+            }
         }
-
+        CommitGraph g = graph(head.hash());
+        CommitLog commits = CommitLog.read();
+        PrintWriter out = output();
+        int shown = 0;
+        for (int pos = g.position(head.hash());
+             pos >= 0 && shown < limit; pos = g.parent(pos)) {
+            if (g.time(pos) > until) {
+                continue;
+            } else if (g.time(pos) < since) {
+                break;
+            } else if (skip > 0) {
+                skip -= 1;
+                continue;
+            }
+            int i = commits.recordOf(g.rawId(pos), g.time(pos));
+            if (i >= 0) {
+                printEntry(out, commits.id(i), commits.time(i),
+                        commits.message(i));
+            } else {
+                Commit c = Commit.fromFile(g.id(pos));
+                printEntry(out, c.hash(), c.getTime(), c.getLog());
+            }
+            shown += 1;
+        }
+        out.flush();
     }
 
     /**
      * prints global log of commits.
      */
     public void globalLog() {
-        List<String> arr = Utils.plainFilenamesIn(commitFolder);
-        for (String filename : arr) {
-            File f = new File(commitFolder, filename);
-            Commit c = Utils.readObject(f, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + c.hash());
+        CommitLog commits = CommitLog.read();
+        PrintWriter out = output();
+        for (int i = 0; i < commits.size(); i += 1) {
+            printEntry(out, commits.id(i), commits.time(i),
+                    commits.message(i));
+        }
+        out.flush();
+    }
+
+    /**
+     * print one commit of a log.
+     * @param out : destination.
+     * @param id : commit hash.
+     * @param time : commit time.
+     * @param msg : commit message.
+     */
+    private static void printEntry(PrintWriter out, String id,
+                                   ZonedDateTime time, String msg) {
+        out.println("===");
+        out.println("commit " + id);
+        out.println("Date: " + TIME_FORMATTER.format(time));
+        out.println(msg);
+        out.println();
+    }
 
-            System.out.println("Date: " + TIME_FORMATTER.format(c.getTime()));
-            System.out.println(c.getLog());
-            System.out.println();
+    /**
+     * make a buffered writer over standard output for commands that
+     * print a lot; it must be flushed before the command returns.
+     * @return PrintWriter
+     */
+    private static PrintWriter output() {
+        return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), 1 << 16));
+    }
 
+    /**
+     * parse a non-negative count given as an option.
+     * @param s : decimal digits.
+     * @return int
+     */
+    private static int parseCount(String s) {
+        try {
+            int n = Integer.parseInt(s);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw new GitletException("Invalid count " + s + ".");
+    }
+
+    /**
+     * parse a date given as an option, either yyyy-MM-dd (that day
+     * here) or an ISO date and time with an offset.
+     * @param s : date.
+     * @param end : whether a day means its last moment rather than
+     *            its start, so that --until includes the whole day.
+     * @return milliseconds since the epoch.
+     */
+    private static long parseDate(String s, boolean end) {
+        try {
+            if (s.length() == "yyyy-MM-dd".length()) {
+                LocalDate day = LocalDate.parse(s);
+                if (end) {
+                    return day.plusDays(1)
+                            .atStartOfDay(ZoneId.systemDefault())
+                            .toInstant().toEpochMilli() - 1;
+                }
+                return day.atStartOfDay(ZoneId.systemDefault())
+                        .toInstant().toEpochMilli();
+            }
+            return OffsetDateTime.parse(s).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            throw new GitletException("Invalid date " + s + ".");
         }
     }
 
@@ -117,9 +283,35 @@ public class Repo implements Serializable {
         if (!f.exists()) {
             f.createNewFile();
         }
-        Utils.writeObject(f, this);
+        Utils.writeContents(f, (Object) encode());
         stage.saveArea();
+        if (index != null) {
+            index.save();
+        }
+
+    }
+
+    /**
+     * encode the branch state of this repo; the staging area
+     * is saved separately.
+     * @return bytes as read by decode.
+     */
+    private byte[] encode() {
+        Encoder e = new Encoder(KIND);
+        e.writeId(first);
+        e.writeId(headId);
+        e.writeString(branch);
+        e.writeIdMap(branchMap);
+        return e.toByteArray();
+    }
 
+    /**
+     * decode a repo written by encode.
+     * @param data : encoded repo.
+     * @return Repo without its staging area.
+     */
+    private static Repo decode(byte[] data) {
+        return new Repo(new Decoder(data, KIND));
     }
 
     /**
@@ -129,8 +321,12 @@ public class Repo implements Serializable {
     public static Repo findRepo() {
         if (Repo.repoExists()) {
             File f = new File(gitletFolder, "repo" + ".txt");
-            if (f.exists()) {
-                Repo r = Utils.readObject(f, Repo.class);
+            if (LegacyRepo.found()) {
+                throw new GitletException("This repository was made by an "
+                        + "older version of Gitlet; run migrate first.");
+            } else if (f.exists()) {
+                Repo r = decode(Utils.readContents(f));
+                r.head = Commit.fromFile(r.headId);
                 r.stage = StagingArea.fromFile();
                 return r;
             } else {
@@ -147,17 +343,30 @@ public class Repo implements Serializable {
         gitletFolder.mkdir();
         commitFolder.mkdir();
         blobFolder.mkdir();
+        treeFolder.mkdir();
         stage = new StagingArea();
         branch = "master";
         branchMap = new TreeMap<String, String>();
 
         Commit c = new Commit();
-        head = c;
-        first = c;
+        CommitIndex.add(c.hash());
+        CommitGraph.add(c);
+        CommitLog.add(c);
+        setHead(c);
+        first = c.hash();
         branchMap.put(branch, head.hash());
 
     }
 
+    /**
+     * move head to commit c.
+     * @param c : new head commit.
+     */
+    private void setHead(Commit c) {
+        head = c;
+        headId = c.hash();
+    }
+
     /**
      * equiv to gitlet add command. adds a file to stagingarea.
      * @param args args of add
@@ -165,12 +374,91 @@ public class Repo implements Serializable {
      */
     public void add(String[] args) throws IOException {
         if (args.length < 2) {
-            throw new GitletException("not enough args (add)" + args[1]);
+            throw new GitletException("not enough args (add)");
+        }
+        for (int i = 1; i < args.length; i += 1) {
+            if (new File(cwd, args[i]).isDirectory()) {
+                addAll(workingFiles(new File(cwd, args[i])));
+            } else {
+                add(args[i]);
+            }
         }
-        add(args[1]);
 
     }
 
+    /**
+     * add many files at once, as add(String) does for one: hash them
+     * in parallel through the stat cache, store each new blob once,
+     * and then update the staging area.
+     * @param names : files relative to cwd.
+     */
+    private void addAll(List<String> names) {
+        TreeMap<String, ObjectId> ids = index().hashAll(names);
+        TreeMap<String, ObjectId> adds = new TreeMap<>();
+        TreeMap<ObjectId, File> toStore = new TreeMap<>();
+        ArrayList<String> reverted = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> e : ids.entrySet()) {
+            String name = e.getKey();
+            ObjectId prevHash = stage.getToAdd().id(name);
+            if (prevHash == null && stage.delContains(name)) {
+                stage.getToDelete().remove(name);
+                continue;
+            } else if (prevHash == null) {
+                prevHash = head.trackedList().id(name);
+            }
+            if (e.getValue().equals(prevHash)) {
+                if (stage.addContains(name)) {
+                    reverted.add(name);
+                }
+            } else {
+                adds.put(name, e.getValue());
+                toStore.putIfAbsent(e.getValue(), new File(cwd, name));
+            }
+        }
+        toStore.entrySet().parallelStream()
+                .filter(e -> !Blobs.contains(e.getKey().toString()))
+                .forEach(e -> Blobs.store(e.getValue(),
+                        e.getKey().toString()));
+        stage.getToAdd().keySet().removeAll(reverted);
+        adds.forEach(stage::stageAdd);
+    }
+
+    /**
+     * list the plain files under DIR, leaving out .gitlet.
+     * @param dir : directory in the working tree.
+     * @return sorted paths relative to cwd, '/'-separated.
+     */
+    private List<String> workingFiles(File dir) {
+        ArrayList<String> result = new ArrayList<>();
+        Path root = cwd.toPath();
+        Path skip = gitletFolder.toPath();
+        SimpleFileVisitor<Path> visitor = new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d,
+                    BasicFileAttributes attrs) {
+                return d.equals(skip) ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path f,
+                    BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    result.add(root.relativize(f).toString()
+                            .replace(File.separatorChar, '/'));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        };
+        try {
+            Files.walkFileTree(dir.toPath().normalize(), visitor);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
     /**
      * (1) add the file to the staging area if the file is not being tracked,
      * or the file is tracked but has been changed,
@@ -185,34 +473,25 @@ public class Repo implements Serializable {
      */
     public void add(String name) throws IOException {
         File f = new File(cwd, name);
-        File prev = null;
-        String prevHash = "";
+        ObjectId prevHash;
         if (!f.exists()) {
             throw new GitletException("File does not exist.");
         } else if (stage.addContains(name)) {
-            prev = new File(blobFolder, stage.getAdd(name) + ".txt");
-            prevHash = Utils.sha1(Utils.readContentsAsString(prev));
+            prevHash = stage.getToAdd().id(name);
         } else if (stage.delContains(name)) {
             stage.getToDelete().remove(name);
             return;
-        } else if (head.trackedList().get(name) != null) {
-            prev = new File(blobFolder, head.trackedList().get(name) + ".txt");
-            prevHash = Utils.sha1(Utils.readContentsAsString(prev));
         } else {
-            prevHash = "";
+            prevHash = head.trackedList().id(name);
         }
-        String currHash = Utils.sha1(Utils.readContentsAsString(f));
-        if (prevHash.equals(currHash)) {
+        ObjectId currHash = Blobs.hash(f);
+        if (currHash.equals(prevHash)) {
             if (stage.addContains(name)) {
                 stage.getToAdd().remove(name);
             }
             return;
         }
-        File newLoc = new File(blobFolder, currHash + ".txt");
-        if (!newLoc.exists()) {
-            newLoc.createNewFile();
-        }
-        Utils.writeContents(newLoc, Utils.readContentsAsString(f));
+        Blobs.store(f, currHash.toString());
         stage.stageAdd(name, currHash);
     }
 
@@ -236,14 +515,10 @@ public class Repo implements Serializable {
      * @param name : name of file to be removed
      */
     private void remove(String name) {
-        File f = new File(cwd, name);
-
         if (stage.addContains(name)) {
             stage.getToAdd().remove(name);
         } else if (head.trackedList().containsKey(name)) {
-            if (f.exists()) {
-                Utils.restrictedDelete(f);
-            }
+            deleteFile(name);
             stage.stageDelete(name, head.trackedList().get(name));
         } else {
             throw new GitletException("No reason to remove the file.");
@@ -251,6 +526,21 @@ public class Repo implements Serializable {
 
     }
 
+    /**
+     * delete the file NAME from the working directory, if it is there,
+     * along with any directories that deleting it leaves empty.
+     * @param name : path relative to cwd, '/'-separated.
+     */
+    private static void deleteFile(String name) {
+        File f = new File(cwd, name);
+        if (f.isFile() && f.delete()) {
+            File dir = f.getParentFile();
+            while (!dir.equals(cwd) && dir.delete()) {
+                dir = dir.getParentFile();
+            }
+        }
+    }
+
     /**
      * inner function for making a commit.
      * @param args : commit message
@@ -280,13 +570,15 @@ public class Repo implements Serializable {
      * @param delTracking
      * @throws IOException
      */
-    @SuppressWarnings("unchecked")
     public void makeCommit(String msg, String branchName,
-                           TreeMap addTracking, TreeMap delTracking)
+                           PathMap addTracking, PathMap delTracking)
             throws IOException {
         Commit parent = head;
         Commit c = new Commit(msg, parent, addTracking, delTracking);
-        head = c;
+        CommitIndex.add(c.hash());
+        CommitGraph.add(c);
+        CommitLog.add(c);
+        setHead(c);
         branchMap.put(branchName, c.hash());
         stage.reset();
     }
@@ -301,16 +593,18 @@ public class Repo implements Serializable {
      * @param parent : immediate parent.
      * @param mergeParent : parent created through merging; default null
      */
-    @SuppressWarnings("unchecked")
     public void makeCommit(String msg,
                            String branchName,
-                           TreeMap addTracking, TreeMap delTracking,
+                           PathMap addTracking, PathMap delTracking,
                            Commit parent,
                            Commit mergeParent) throws IOException {
 
         Commit c = new Commit(msg,
                 parent, mergeParent, addTracking, delTracking);
-        head = c;
+        CommitIndex.add(c.hash());
+        CommitGraph.add(c);
+        CommitLog.add(c);
+        setHead(c);
         branchMap.put(branchName, c.hash());
         stage.reset();
     }
@@ -330,10 +624,9 @@ public class Repo implements Serializable {
             throw new GitletException("Incorrect operands.");
         }
         String fileHash = head.trackedList().get(args[2]);
-        File src = new File(blobFolder, fileHash + ".txt");
         File dest = new File(cwd, args[2]);
 
-        checkoutByName(src, dest);
+        checkoutByName(fileHash, dest);
     }
 
     /**
@@ -342,33 +635,23 @@ public class Repo implements Serializable {
      * + puts it in the cwd, overwriting the version of the file
      * that's already there if there is one.
      * The new version of the file is not staged.
-     * @param src : source file
+     * @param id : hash of the blob to write
      * @param dest : dest file
      */
-    public void checkoutByName(File src, File dest) throws IOException {
-        if (!dest.exists()) {
-            dest.createNewFile();
-        }
+    public void checkoutByName(String id, File dest) throws IOException {
         if (stage.addContains(dest.getName())) {
             stage.getToAdd().remove(dest);
         }
-        Utils.writeContents(dest, Utils.readContentsAsString(src));
+        Blobs.copyTo(id, dest);
     }
 
     /**
      * search for a commit by hash (id).
      * @param shortHash : short or long version of a commit hash.
-     * @return File that is the commit.
+     * @return full hash of the commit, or null if there is none.
      */
-    private File findCommitById(String shortHash) {
-        List<String> s = Utils.plainFilenamesIn(commitFolder);
-        for (String str : s) {
-            if (str.startsWith(shortHash)) {
-                File f = new File(commitFolder, str);
-                return f;
-            }
-        }
-        return new File(commitFolder, shortHash + ".txt");
+    private String findCommitById(String shortHash) {
+        return CommitIndex.read().resolve(shortHash);
     }
 
     /**
@@ -387,11 +670,11 @@ public class Repo implements Serializable {
             throw new GitletException("Incorrect operands.");
         }
         String filename = args[3];
-        File srcComm = findCommitById(args[1]);
-        if (!srcComm.exists()) {
+        String srcComm = findCommitById(args[1]);
+        if (srcComm == null) {
             throw new GitletException("No commit with that id exists.");
         } else {
-            Commit c = Utils.readObject(srcComm, Commit.class);
+            Commit c = Commit.fromFile(srcComm);
             File dest = new File(cwd, filename);
             if (dest.exists() && !(stage.addContains(filename)
                     || head.trackedList().containsKey(filename))) {
@@ -400,9 +683,7 @@ public class Repo implements Serializable {
                         + " delete it, or add and commit it first.");
             }
             if (c.trackedList().containsKey(filename)) {
-                File src = new File(blobFolder,
-                        c.trackedList().get(filename) + ".txt");
-                checkoutByName(src, dest);
+                checkoutByName(c.trackedList().get(filename), dest);
             } else {
                 throw new
                         GitletException("File does not exist in that commit.");
@@ -441,31 +722,33 @@ public class Repo implements Serializable {
         Commit currHead = head;
 
         checkValidityMerge(newBranch);
-        File headFile =
-                new File(commitFolder, branchMap.get(newBranch) + ".txt");
         Commit givenHead =
-                Utils.readObject(headFile, Commit.class);
-        Commit split =
-                findSplitPoint(currHead, givenHead);
-
-        if (split.hash().equals(currHead.hash())) {
+                Commit.fromFile(branchMap.get(newBranch));
+        CommitGraph g = graph(currHead.hash(), givenHead.hash());
+        Reachability reach = Reachability.read();
+        boolean fastForward = reach.of(g, givenHead.hash())
+                .contains(g.position(currHead.hash()));
+        boolean behind = reach.of(g, currHead.hash())
+                .contains(g.position(givenHead.hash()));
+        reach.save(branchMap.values());
+        if (fastForward) {
             checkoutBranch(new String[]{"checkout", newBranch});
             throw new GitletException("Current branch fast-forwarded.");
-        } else if (split.hash().equals(givenHead.hash())) {
+        } else if (behind) {
             throw new GitletException("Given branch is "
                     + "an ancestor of the current branch.");
         }
+        Commit split =
+                findSplitPoint(g, currHead, givenHead);
         checkAgainstGiven(split, currHead, givenHead);
 
         for (String filename : split.trackedList().keySet()) {
-            if (!currHead.trackedList().containsKey(filename)
-                    || !givenHead.trackedList().containsKey(filename)) {
-                File f = new File(cwd, filename);
-                if (f.exists()) {
-                    Utils.restrictedDelete(f);
-                    stage.stageDelete(filename,
-                            split.trackedList().get(filename));
-                }
+            if (!givenHead.trackedList().containsKey(filename)
+                    && currHead.trackedList().containsKey(filename)
+                    && !modified(split, currHead, filename)) {
+                deleteFile(filename);
+                stage.stageDelete(filename,
+                        split.trackedList().id(filename));
             }
         }
 
@@ -493,17 +776,20 @@ public class Repo implements Serializable {
         for (String filename : givenHead.trackedList().keySet()) {
             if (modified(split, givenHead, filename)) {
                 if (modified(split, currHead, filename)) {
-                    if (!currHead.trackedList().get(filename).
-                            equals(givenHead.trackedList().get(filename))) {
+                    ObjectId ours = currHead.trackedList().id(filename);
+                    if (ours == null) {
                         System.out.println("Encountered a merge conflict.");
                         writeMergeError(givenHead, currHead, filename);
+                    } else if (!ours.equals(
+                            givenHead.trackedList().id(filename))) {
+                        mergeLines(split, givenHead, currHead, filename);
                     }
 
                 } else {
                     checkout(new String[]{"checkout",
                             givenHead.hash(), "--", filename});
                     stage.stageAdd(filename,
-                            givenHead.trackedList().get(filename));
+                            givenHead.trackedList().id(filename));
 
                 }
             }
@@ -511,6 +797,33 @@ public class Repo implements Serializable {
     }
 
 
+    /**
+     * merge the changes made to filename in commits given and curr
+     * line by line, marking only the regions they changed differently.
+     * @param split : common ancestor of given and curr.
+     * @param given : head of given branch in merge
+     * @param curr : head of current branch in merge
+     * @param filename : file that has been changed in both commits;
+     * overwriting file.
+     */
+    private void mergeLines(Commit split, Commit given,
+                            Commit curr, String filename)
+                           throws IOException {
+        LineMerge merge = new LineMerge(split.trackedList().get(filename),
+                curr.trackedList().get(filename),
+                given.trackedList().get(filename));
+        File src = new File(cwd, filename);
+        boolean clean;
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(src))) {
+            clean = merge.write(out);
+        }
+        if (!clean) {
+            System.out.println("Encountered a merge conflict.");
+        }
+        stage.stageAdd(filename, Blobs.store(src));
+    }
+
     /**
      * write a merge error for filename in commits given and curr.
      * @param given : head of given branch in merge
@@ -521,31 +834,31 @@ public class Repo implements Serializable {
     private void writeMergeError(Commit given,
                                  Commit curr, String filename)
                                 throws IOException {
-        File currVersion = new File(blobFolder,
-                curr.trackedList().get(filename) + ".txt");
-        String currPart = "<<<<<<< HEAD\n"
-                + Utils.readContentsAsString(currVersion);
-
-
-        File givenVersion = new File(blobFolder,
-                given.trackedList().get(filename) + ".txt");
-        String givenPart = "=======\n" + ">>>>>>>\n";
-        if (givenVersion.exists()) {
-            givenPart = "=======\n"
-                    + Utils.readContentsAsString(givenVersion)
-                    + ">>>>>>>\n";
-        }
-        String contents = currPart + givenPart;
         File src = new File(cwd, filename);
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(src))) {
+            out.write(LineMerge.OURS.getBytes(StandardCharsets.UTF_8));
+            writeBlob(curr.trackedList().get(filename), out);
+            out.write(LineMerge.SEPARATOR.getBytes(StandardCharsets.UTF_8));
+            writeBlob(given.trackedList().get(filename), out);
+            out.write(LineMerge.THEIRS.getBytes(StandardCharsets.UTF_8));
+        }
+        stage.stageAdd(filename, Blobs.store(src));
+    }
 
-        Utils.writeContents(src, contents);
-        File newLoc = new File(blobFolder,
-                Utils.sha1(contents) + ".txt");
-        if (!newLoc.exists()) {
-            newLoc.createNewFile();
+    /**
+     * copy the contents of blob ID to OUT.
+     * @param id : blob hash; null for a file that does not exist.
+     * @param out : output stream.
+     * @throws IOException
+     */
+    private void writeBlob(String id, OutputStream out) throws IOException {
+        if (id == null || !Blobs.contains(id)) {
+            return;
+        }
+        try (InputStream in = Blobs.open(id)) {
+            in.transferTo(out);
         }
-        Utils.writeContents(newLoc, contents);
-        stage.stageAdd(filename, Utils.sha1(contents));
 
     }
 
@@ -558,10 +871,10 @@ public class Repo implements Serializable {
      * @return
      */
     public boolean modified(Commit split, Commit current, String filename) {
-        String splitHash =
-                split.trackedList().get(filename);
-        String currentHash =
-                current.trackedList().get(filename);
+        ObjectId splitHash =
+                split.trackedList().id(filename);
+        ObjectId currentHash =
+                current.trackedList().id(filename);
         if ((splitHash == null)
                 && (currentHash == null)) {
             return false;
@@ -574,54 +887,57 @@ public class Repo implements Serializable {
     }
 
     /**
-     * find the split point using bfs.
+     * find the split point: the best common ancestor of the two heads
+     * according to the commit graph.
+     * @param g : commit graph containing both heads.
      * @param oldHead : first parent from current.
      * @param newHead : second parent from given.
-     * @return most recent parent commit.
+     * @return most recent common ancestor.
      */
-    private Commit findSplitPoint(Commit oldHead, Commit newHead) {
-        HashSet<String> seen = new HashSet<String>();
-        ArrayDeque<Commit> queue = new ArrayDeque<Commit>();
-
-        queue.add(newHead);
-        queue.add(oldHead);
+    private Commit findSplitPoint(CommitGraph g, Commit oldHead,
+                                  Commit newHead) {
+        int base = g.mergeBase(g.position(oldHead.hash()),
+                g.position(newHead.hash()));
+        return base < 0 ? Commit.fromFile(first)
+                : Commit.fromFile(g.id(base));
+    }
 
-        while (queue.size() != 0) {
-            Commit next = queue.pop();
-            if (seen.contains(next.hash())) {
-                return next;
-            } else {
-                seen.add(next.hash());
-                if (next.getParent() != null) {
-                    queue.add(next.getParent());
-                }
-                if (next.getMergeParent() != null) {
-                    queue.add(next.getMergeParent());
-                }
+    /**
+     * read the commit graph, rebuilding it first if any of IDS is
+     * missing from it.
+     * @param ids : commit hashes that must be in the graph.
+     * @return CommitGraph
+     */
+    private CommitGraph graph(String... ids) {
+        CommitGraph g = CommitGraph.read();
+        for (String id : ids) {
+            if (g.position(id) < 0) {
+                CommitGraph.rebuild();
+                return CommitGraph.read();
             }
         }
-        return first;
+        return g;
     }
 
     /**
      * find a commit by commit log.
-     * @param args : args[1] = log.
+     * @param args : args[1] = log, or args[1] = --prefix or
+     *             --substring and args[2] = part of the log.
      */
     public void find(String[] args) {
-        if (args.length != 2) {
+        String mode = CommitLog.EXACT;
+        if (args.length == 3 && (args[1].equals(CommitLog.PREFIX)
+                || args[1].equals(CommitLog.SUBSTRING))) {
+            mode = args[1];
+        } else if (args.length != 2) {
             throw new GitletException("wrong # of args (find)");
         }
-        boolean found = false;
-        List<String> arr = Utils.plainFilenamesIn(commitFolder);
-        for (String filename : arr) {
-            File f = new File(commitFolder, filename);
-            Commit c = Utils.readObject(f, Commit.class);
-            if (c.getLog().equals(args[1])) {
-                System.out.println(c.hash());
-                found = true;
-            }
+        CommitLog commits = CommitLog.read();
+        List<Integer> found = commits.find(args[args.length - 1], mode);
+        for (int i : found) {
+            System.out.println(commits.id(i));
         }
-        if (!found) {
+        if (found.isEmpty()) {
             throw new GitletException("Found no commit with that message.");
         }
     }
@@ -664,28 +980,28 @@ public class Repo implements Serializable {
         System.out.println();
         ArrayList<String> modified = new ArrayList<>();
         ArrayList<String> untracked = new ArrayList<>();
-        List<String> strs = Utils.plainFilenamesIn(cwd);
+        Index idx = index();
+        List<String> strs = idx.sync() ? idx.files() : workingFiles(cwd);
 
+        ArrayList<String> tracked = new ArrayList<>();
         for (String s : strs) {
-            File src = new File(cwd, s);
-            String contents = Utils.sha1(Utils.readContentsAsString(src));
-            if (stage.addContains(s)) {
-                File f = new File(blobFolder, stage.getAdd(s) + ".txt");
-                if (Utils.sha1(
-                        Utils.readContentsAsString(f)).equals(contents)) {
-                    modified.add(s);
-                }
-            } else if (head.trackedList().containsKey(s)) {
-                File f = new File(blobFolder,
-                        head.trackedList().get(s) + ".txt");
-                if (Utils.sha1(
-                        Utils.readContentsAsString(f)).equals(contents)) {
-                    modified.add(s);
-                }
+            if (stage.addContains(s) || head.trackedList().containsKey(s)) {
+                tracked.add(s);
             } else {
                 untracked.add(s);
             }
         }
+        TreeMap<String, ObjectId> now = idx.hashAll(tracked);
+        for (String s : tracked) {
+            ObjectId staged = stage.getToAdd().id(s);
+            ObjectId expected = staged != null ? staged
+                    : head.trackedList().id(s);
+            if (!expected.equals(now.get(s))) {
+                modified.add(s);
+            }
+        }
+        idx.retainAll(new HashSet<>(tracked));
+        idx.setFiles(strs);
         System.out.println("=== Removed Files ===");
         for (String s : stage.getToDelete().keySet()) {
             System.out.println(s);
@@ -704,6 +1020,236 @@ public class Repo implements Serializable {
         System.out.println();
     }
 
+    /**
+     * get ready to run another command on this repo, which a server
+     * keeps loaded between commands.
+     * @param indexChanged : true if another process saved the stat
+     *                     cache since this repo last did.
+     */
+    void reuse(boolean indexChanged) {
+        if (indexChanged) {
+            index = null;
+        } else if (index != null) {
+            index.reuse();
+        }
+    }
+
+    /**
+     * get the stat cache, reading it on first use.
+     * @return Index
+     */
+    private Index index() {
+        if (index == null) {
+            index = Index.fromFile();
+        }
+        return index;
+    }
+
+    /**
+     * print unified diffs: of the working files against the staging
+     * area by default, of the staging area against the head commit
+     * with --staged, or of one commit against another when given two
+     * commit ids.  --patience selects the patience algorithm instead
+     * of Myers'.  Files whose blob ids match are skipped unread.
+     * @param args : args[1..] = options and commit ids.
+     */
+    public void diff(String[] args) {
+        int algorithm = Diff.MYERS;
+        boolean staged = false;
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            switch (args[i]) {
+            case "--patience":
+                algorithm = Diff.PATIENCE;
+                break;
+            case "--myers":
+                algorithm = Diff.MYERS;
+                break;
+            case "--staged":
+                staged = true;
+                break;
+            default:
+                ids.add(args[i]);
+            }
+        }
+        if (ids.size() != 0 && (ids.size() != 2 || staged)) {
+            throw new GitletException("wrong # of args (diff)");
+        }
+        PrintWriter out = output();
+        UnifiedDiff printer = new UnifiedDiff(out, algorithm);
+        PathMap staging = new PathMap(head.trackedList());
+        staging.putAll(stage.getToAdd());
+        for (String path : stage.getToDelete().keySet()) {
+            staging.remove(path);
+        }
+        if (ids.size() == 2) {
+            diffTrees(printer, diffCommit(ids.get(0)).trackedList(),
+                    diffCommit(ids.get(1)).trackedList());
+        } else if (staged) {
+            diffTrees(printer, head.trackedList(), staging);
+        } else {
+            for (String path : staging.keySet()) {
+                ObjectId was = staging.id(path);
+                ObjectId now = index().hash(path);
+                if (!was.equals(now)) {
+                    printer.file(path, was.toString(),
+                            now == null ? null : new File(cwd, path));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * print the differences between the files in BEFORE and AFTER.
+     * @param printer : destination.
+     * @param before : blob ids by file name.
+     * @param after : blob ids by file name.
+     */
+    private void diffTrees(UnifiedDiff printer, Map<String, String> before,
+                           Map<String, String> after) {
+        TreeSet<String> paths = new TreeSet<>(before.keySet());
+        paths.addAll(after.keySet());
+        for (String path : paths) {
+            String was = before.get(path);
+            String now = after.get(path);
+            if (was == null || !was.equals(now)) {
+                printer.blobs(path, was, now);
+            }
+        }
+    }
+
+    /**
+     * find a commit named on the command line of diff.
+     * @param shortHash : full or abbreviated commit id.
+     * @return Commit
+     */
+    private Commit diffCommit(String shortHash) {
+        String id = findCommitById(shortHash);
+        if (id == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        return Commit.fromFile(id);
+    }
+
+    /**
+     * pack all objects into a single pack file, storing versions of
+     * the same file as deltas, and delete the loose objects.
+     * @param args : no arguments besides gc.
+     * @throws IOException
+     */
+    public void gc(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new GitletException("wrong # of args (gc)");
+        }
+        int n = PackWriter.repack();
+        System.out.println("Packed " + n + " objects.");
+    }
+
+    /**
+     * bring the repository in the current directory up to date: convert
+     * one saved by the first version of gitlet (see LegacyRepo), or move
+     * loose objects kept outside the sharded object directories into
+     * them.
+     * @param args : no arguments besides migrate.
+     * @throws IOException
+     */
+    public static void migrate(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new GitletException("wrong # of args (migrate)");
+        } else if (!repoExists()) {
+            throw new
+                    GitletException("Not in an initialized Gitlet directory.");
+        }
+        if (LegacyRepo.found()) {
+            int n = LegacyRepo.convert();
+            System.out.println("Converted " + n + " commits.");
+        } else {
+            int n = ObjectStore.migrate();
+            System.out.println("Moved " + n + " objects.");
+        }
+    }
+
+    /**
+     * run commands sent by clients until stopped, keeping this repo
+     * loaded between them; with --stop, stop the running server.
+     * Nothing is saved when this returns, since the server saves
+     * after each command.
+     * @param args : args[1] = optional --stop.
+     * @throws IOException
+     */
+    public void server(String[] args) throws IOException {
+        if (args.length == 2 && args[1].equals("--stop")) {
+            if (!Server.stop()) {
+                throw new GitletException("No server is running.");
+            }
+        } else if (args.length == 1) {
+            new Server(this).run();
+        } else {
+            throw new GitletException("wrong # of args (server)");
+        }
+    }
+
+    /**
+     * watch the working directory for changes until stopped, so that
+     * status, checkout and reset look only at the files that changed;
+     * with --stop, stop the running watcher.  Nothing is saved when
+     * this returns, since the repo may have changed meanwhile.
+     * @param args : args[1] = optional --stop.
+     * @throws IOException
+     */
+    public void watch(String[] args) throws IOException {
+        if (args.length == 2 && args[1].equals("--stop")) {
+            if (!Watcher.stop()) {
+                throw new GitletException("No watcher is running.");
+            }
+        } else if (args.length == 1) {
+            new Watcher().run();
+        } else {
+            throw new GitletException("wrong # of args (watch)");
+        }
+    }
+
+    /**
+     * show or change a repository setting.
+     * @param args : args[1] = setting name, args[2] = new value.
+     */
+    public void config(String[] args) {
+        if (args.length == 2) {
+            String value = Config.get(args[1]);
+            if (value != null) {
+                System.out.println(value);
+            }
+        } else if (args.length == 3) {
+            if (args[1].equals(Config.COMPRESSION)) {
+                int level;
+                try {
+                    level = Integer.parseInt(args[2]);
+                } catch (NumberFormatException excp) {
+                    level = -2;
+                }
+                if (level < -1 || level > 9) {
+                    throw new GitletException("Compression level must be "
+                            + "between -1 and 9.");
+                }
+            } else if (args[1].equals(Config.CHECKOUT_THREADS)) {
+                int threads;
+                try {
+                    threads = Integer.parseInt(args[2]);
+                } catch (NumberFormatException excp) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    throw new GitletException("Checkout threads must be "
+                            + "at least 1.");
+                }
+            }
+            Config.set(args[1], args[2]);
+        } else {
+            throw new GitletException("wrong # of args (config)");
+        }
+    }
+
     /**
      * remove a branch.
      * @param args : branch name.
@@ -733,37 +1279,12 @@ public class Repo implements Serializable {
         if (args.length != 2) {
             throw new GitletException("wrong # of args (reset)");
         }
-        File f = findCommitById(args[1]);
-        if (f.exists()) {
-            Commit c = Utils.readObject(f, Commit.class);
-            for (String filename : c.trackedList().keySet()) {
-                File temp = new File(cwd, filename);
-                File src = new File(blobFolder,
-                        c.trackedList().get(filename) + ".txt");
-                if (temp.exists()) {
-                    if (Utils.sha1(Utils.readContentsAsString(temp)).
-                            equals(Utils.sha1(
-                                    Utils.readContentsAsString(src)))) {
-                        temp = null;
-                    } else if (!stage.addContains(filename)
-                            || !head.trackedList().containsKey(filename)) {
-                        throw new GitletException("There is an"
-                                + "untracked file in the way; "
-                                + "delete it, or add and commit it first.");
-                    }
-                }
-            }
-            for (String filename : c.trackedList().keySet()) {
-                File src = new File(blobFolder,
-                        c.trackedList().get(filename) + ".txt");
-                File rec = new File(cwd, filename);
-                if (!rec.exists()) {
-                    rec.createNewFile();
-                }
-                Utils.writeContents(rec, Utils.readContentsAsString(src));
-            }
+        String id = findCommitById(args[1]);
+        if (id != null) {
+            Commit c = Commit.fromFile(id);
+            switchTo(c);
             stage.reset();
-            head = c;
+            setHead(c);
             branchMap.put(branch, c.hash());
         } else {
             throw new GitletException("No commit with that id exists.");
@@ -794,47 +1315,72 @@ public class Repo implements Serializable {
                     GitletException("No need to checkout the current branch.");
         }
         String fn = branchMap.get(newBranch);
-        File k = new File(commitFolder, fn + ".txt");
-        Commit c = Utils.readObject(k, Commit.class);
-        for (String filename : c.trackedList().keySet()) {
-            File temp = new File(cwd, filename);
-            if (temp.exists()
-                    && !(stage.addContains(filename)
-                    || head.trackedList().containsKey(filename))) {
+        Commit c = Commit.fromFile(fn);
+        switchTo(c);
+        stage.reset();
+        branch = newBranch;
+        setHead(c);
+    }
+
+    /**
+     * make the working files match commit c, touching only the files
+     * that differ between the head commit and c, staged files, and
+     * files the stat cache shows were edited since they were written.
+     * Fails before changing anything if an untracked file would be
+     * overwritten.
+     * @param c : commit being checked out.
+     */
+    private void switchTo(Commit c) {
+        index().sync();
+        TreeMap<String, String> before = new TreeMap<>();
+        TreeMap<String, String> after = new TreeMap<>();
+        Tree.diff(head.tree(), c.tree(), before, after);
+        for (Map.Entry<String, String> e : after.entrySet()) {
+            File f = new File(cwd, e.getKey());
+            boolean blocked = !before.containsKey(e.getKey())
+                    && !stage.addContains(e.getKey())
+                    && f.exists() && !Blobs.matches(f, e.getValue());
+            for (String dir = e.getKey(); dir.indexOf('/') > 0
+                    && !blocked;) {
+                dir = dir.substring(0, dir.lastIndexOf('/'));
+                blocked = new File(cwd, dir).isFile()
+                        && !before.containsKey(dir)
+                        && !stage.addContains(dir);
+            }
+            if (blocked) {
                 throw new GitletException("There is an untracked file"
                         + " in the way; "
                         + "delete it, or add and commit it first.");
             }
         }
-        for (String filename : head.trackedList().keySet()) {
-            if (!c.trackedList().containsKey(filename)) {
-                File f = new File(cwd, filename);
-                if (f.exists()) {
-                    Utils.restrictedDelete(f);
-                }
+        CheckoutPlan plan = new CheckoutPlan(cwd);
+        TreeSet<String> staged = new TreeSet<>(stage.getToAdd().keySet());
+        staged.addAll(stage.getToDelete().keySet());
+        for (String filename : staged) {
+            String target = Tree.find(c.tree(), filename);
+            if (target == null) {
+                plan.delete(filename);
+            } else {
+                plan.write(filename, target);
             }
         }
-        for (String filename : stage.getToAdd().keySet()) {
-            if (!c.trackedList().containsKey(filename)) {
-                File f = new File(cwd, filename);
-                if (f.exists()) {
-                    Utils.restrictedDelete(f);
-                }
+        for (String filename : before.keySet()) {
+            if (!after.containsKey(filename)) {
+                plan.delete(filename);
             }
         }
+        for (Map.Entry<String, String> e : after.entrySet()) {
+            plan.write(e.getKey(), e.getValue());
+        }
         for (String filename : c.trackedList().keySet()) {
-            File src = new File(blobFolder,
-                    c.trackedList().get(filename) + ".txt");
-            File rec = new File(cwd, filename);
-            if (!rec.exists()) {
-                rec.createNewFile();
+            ObjectId id = c.trackedList().id(filename);
+            if (!after.containsKey(filename)
+                    && !staged.contains(filename)
+                    && !id.equals(index().hash(filename))) {
+                plan.write(filename, id.toString());
             }
-            Utils.writeContents(rec,
-                    Utils.readContentsAsString(src));
         }
-        stage.reset();
-        branch = newBranch;
-        head = c;
+        plan.run();
     }
 
     /**
@@ -0,0 +1,396 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/** A long-lived process that runs gitlet commands for clients, so
+ *  that a command costs neither a fresh JVM nor a fresh load of the
+ *  repo.  It is started by "server" and listens on the Unix-domain
+ *  socket .gitlet/server.sock; while that exists, Main forwards each
+ *  command to it and prints what comes back.
+ *
+ *  Commands run one at a time with System.out and System.err sent to
+ *  the client.  The repo, its head commit's files, the stat cache and
+ *  the open packs stay loaded between commands, and are read again
+ *  only if another process changed the files they came from.  A
+ *  GitletException ends the command instead of the process; its
+ *  message is printed and the exit status is 0, as in the CLI.
+ *
+ *  A request is the number of arguments followed by each argument
+ *  (DataOutputStream.writeUTF).  The reply is a series of frames:
+ *  OUT or ERR, a length and that many bytes of output, ending with
+ *  EXIT and the exit status.
+ *  @author Michelle Wu
+ */
+class Server {
+
+    /** Current Working Directory. */
+    private static File cwd = new File(System.getProperty("user.dir"));
+
+    /** Main metadata folder. */
+    private static File gitletFolder = new File(cwd, ".gitlet");
+
+    /** Where the server listens. */
+    static final File SOCKET = new File(gitletFolder, "server.sock");
+
+    /** Frame of standard output. */
+    private static final int OUT = 1;
+
+    /** Frame of standard error. */
+    private static final int ERR = 2;
+
+    /** Final frame, holding the exit status. */
+    private static final int EXIT = 0;
+
+    /** Size of the output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** True while this process is a server. */
+    private static volatile boolean serving;
+
+    /** The repo, kept loaded between commands; null to load it. */
+    private Repo repo;
+
+    /** Contents of repo.txt and staging.txt when repo was saved. */
+    private byte[][] saved;
+
+    /** Stat data of index.txt, config.txt and the pack folder. */
+    private String[] stamps;
+
+    /**
+     * a server starting with REPO loaded.
+     * @param repo : the current repo.
+     */
+    Server(Repo repo) {
+        this.repo = repo;
+    }
+
+    /**
+     * check whether this process is a server, in which case a
+     * GitletException must not end it.
+     * @return boolean
+     */
+    static boolean serving() {
+        return serving;
+    }
+
+    /**
+     * have the running server carry out ARGS, printing its output and
+     * exiting with its status.
+     * @param args : command line.
+     * @return false if there is no server to do it, or ARGS is a
+     *         command that is never forwarded.
+     */
+    static boolean forward(String[] args) {
+        if (!SOCKET.exists() || args[0].equals("init")
+                || args[0].equals("migrate") || args[0].equals("server")
+                || args[0].equals("watch")) {
+            return false;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+            ch.connect(UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        int status;
+        try (SocketChannel c = ch) {
+            status = request(c, args);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("lost the gitlet server: "
+                    + excp.getMessage());
+        }
+        System.out.flush();
+        if (status != 0) {
+            System.exit(status);
+        }
+        return true;
+    }
+
+    /**
+     * tell the running server to stop.
+     * @return true if one was running.
+     */
+    static boolean stop() {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        try (SocketChannel ch =
+                     SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            ch.connect(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            request(ch, new String[] {"server", "--stop"});
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * send ARGS over CH and copy the reply to System.out and System.err.
+     * @param ch : connection to the server.
+     * @param args : command line.
+     * @return exit status.
+     * @throws IOException if the connection fails.
+     */
+    private static int request(SocketChannel ch, String[] args)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(ch)));
+        out.writeInt(args.length);
+        for (String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(ch), BUFFER_SIZE));
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (true) {
+            int type = in.readByte();
+            if (type == EXIT) {
+                return in.readInt();
+            }
+            int len = in.readInt();
+            PrintStream dest = type == ERR ? System.err : System.out;
+            while (len > 0) {
+                int n = in.read(buf, 0, Math.min(len, buf.length));
+                if (n < 0) {
+                    throw new IOException("truncated reply");
+                }
+                dest.write(buf, 0, n);
+                len -= n;
+            }
+            dest.flush();
+        }
+    }
+
+    /**
+     * run commands for clients until told to stop.
+     * @throws IOException if the socket cannot be opened.
+     */
+    void run() throws IOException {
+        if (SOCKET.exists()) {
+            try (SocketChannel ch =
+                         SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                ch.connect(UnixDomainSocketAddress.of(SOCKET.toPath()));
+                throw new GitletException("A server is already running.");
+            } catch (IOException excp) {
+                SOCKET.delete();
+            }
+        }
+        serving = true;
+        remember();
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = serve(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            SOCKET.delete();
+            serving = false;
+        }
+    }
+
+    /**
+     * carry out one client's command.
+     * @param client : connection.
+     * @return false if told to stop.
+     * @throws IOException if the connection fails.
+     */
+    private boolean serve(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(client)));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        DataOutputStream reply = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client),
+                        BUFFER_SIZE));
+        boolean stop = args.length == 2 && args[0].equals("server")
+                && args[1].equals("--stop");
+        int status = stop ? 0 : execute(args, reply);
+        reply.writeByte(EXIT);
+        reply.writeInt(status);
+        reply.flush();
+        return !stop;
+    }
+
+    /**
+     * run ARGS as Main would, sending its output to REPLY.
+     * @param args : command line.
+     * @param reply : connection to the client.
+     * @return exit status.
+     */
+    private int execute(String[] args, DataOutputStream reply) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new Frames(reply, OUT), BUFFER_SIZE));
+        PrintStream err = new PrintStream(new Frames(reply, ERR), true);
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            if (args.length == 0) {
+                throw new GitletException("Please enter a command.");
+            } else if (args[0].equals("init")) {
+                new Repo();
+            } else if (args[0].equals("server")
+                    || args[0].equals("watch")) {
+                throw new GitletException("A server is already running.");
+            } else {
+                Main.run(repo(), args);
+            }
+            return 0;
+        } catch (GitletException excp) {
+            repo = null;
+            out.println(excp.getMessage());
+            return 0;
+        } catch (RuntimeException | IOException | Error excp) {
+            repo = null;
+            err.print("Exception in thread \"main\" ");
+            excp.printStackTrace(err);
+            return 1;
+        } finally {
+            out.flush();
+            err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+            remember();
+        }
+    }
+
+    /**
+     * get the repo, reloading whatever another process has changed
+     * since the last command.
+     * @return Repo
+     */
+    private Repo repo() {
+        String[] stat = stat();
+        if (repo == null || !Arrays.deepEquals(savedState(), saved)) {
+            repo = Repo.findRepo();
+        } else {
+            repo.reuse(!stat[0].equals(stamps[0]));
+        }
+        if (!stat[1].equals(stamps[1])) {
+            Config.reload();
+        }
+        if (!stat[2].equals(stamps[2])) {
+            Pack.reload();
+        }
+        return repo;
+    }
+
+    /**
+     * note the state of the files behind the caches, as left by the
+     * last command.
+     */
+    private void remember() {
+        saved = savedState();
+        stamps = stat();
+    }
+
+    /**
+     * read the files the repo is loaded from.
+     * @return contents of repo.txt and staging.txt.
+     */
+    private static byte[][] savedState() {
+        return new byte[][] {
+            read(new File(gitletFolder, "repo.txt")),
+            read(new File(gitletFolder, "staging.txt"))
+        };
+    }
+
+    /**
+     * read F.
+     * @param f : file.
+     * @return contents, or null if F cannot be read.
+     */
+    private static byte[] read(File f) {
+        return f.exists() ? Utils.readContents(f) : null;
+    }
+
+    /**
+     * describe the stat data of the stat cache, the settings and the
+     * pack folder.
+     * @return one description each.
+     */
+    private static String[] stat() {
+        String[] names = {"index.txt", "config.txt", ".packs"};
+        String[] result = new String[names.length];
+        for (int i = 0; i < names.length; i += 1) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        new File(gitletFolder, names[i]).toPath(),
+                        BasicFileAttributes.class);
+                result[i] = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                        + ":" + attrs.size();
+            } catch (IOException excp) {
+                result[i] = "-";
+            }
+        }
+        return result;
+    }
+
+    /** Sends what is written to it to the client as frames of one
+     *  type. */
+    private static class Frames extends OutputStream {
+
+        /** Connection to the client. */
+        private final DataOutputStream reply;
+
+        /** OUT or ERR. */
+        private final int type;
+
+        /**
+         * a stream of frames of TYPE sent over REPLY.
+         * @param reply : connection to the client.
+         * @param type : OUT or ERR.
+         */
+        Frames(DataOutputStream reply, int type) {
+            this.reply = reply;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            reply.writeByte(type);
+            reply.writeInt(len);
+            reply.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            reply.flush();
+        }
+    }
+}
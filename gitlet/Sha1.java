@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** SHA-1 hashing without per-call setup.  Each thread keeps one digest
+ *  and one direct read buffer, files are hashed straight from their
+ *  channels, and hashes are returned as raw 20-byte ids; hex digits are
+ *  produced only where a hash is shown or used as a name.
+ *  @author Michelle Wu
+ */
+class Sha1 {
+
+    /** Lower-case hex digits by value. */
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Each thread's digest. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+            ThreadLocal.withInitial(Sha1::newDigest);
+
+    /** Each thread's buffer for file reads. */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() ->
+                    ByteBuffer.allocateDirect(ObjectStore.BUFFER_SIZE));
+
+    /**
+     * get this thread's digest, reset.  It must be finished with before
+     * anything else on this thread hashes.
+     * @return MessageDigest
+     */
+    static MessageDigest digest() {
+        MessageDigest md = DIGEST.get();
+        md.reset();
+        return md;
+    }
+
+    /**
+     * hash the concatenation of VALS.
+     * @param vals : byte arrays and Strings, the latter as UTF-8.
+     * @return raw hash.
+     */
+    static byte[] of(Object... vals) {
+        MessageDigest md = digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+        return md.digest();
+    }
+
+    /**
+     * hash the contents of F.
+     * @param f : plain file.
+     * @return raw hash.
+     */
+    static byte[] of(File f) {
+        MessageDigest md = digest();
+        ByteBuffer buf = BUFFER.get();
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            buf.clear();
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return md.digest();
+    }
+
+    /**
+     * format a raw hash.
+     * @param raw : hash.
+     * @return lower-case hex digits.
+     */
+    static String hex(byte[] raw) {
+        return hex(raw, 0, raw.length);
+    }
+
+    /**
+     * format the LEN bytes of DATA starting at OFFSET.
+     * @param data : bytes.
+     * @param offset : first byte.
+     * @param len : number of bytes.
+     * @return lower-case hex digits.
+     */
+    static String hex(byte[] data, int offset, int len) {
+        char[] out = new char[2 * len];
+        for (int i = 0; i < len; i += 1) {
+            int b = data[offset + i];
+            out[2 * i] = DIGITS[(b >> 4) & 0xF];
+            out[2 * i + 1] = DIGITS[b & 0xF];
+        }
+        return new String(out);
+    }
+
+    /**
+     * make a digest.
+     * @return MessageDigest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+}
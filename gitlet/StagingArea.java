@@ -2,22 +2,23 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
-import java.util.TreeMap;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Michelle Wu
  */
-public class StagingArea implements Serializable {
+public class StagingArea {
 
     /** Map containing changed blobs to be added to next commit.
      * key = blob name. value = blob hash. **/
-    private TreeMap<String, String> toAdd;
+    private PathMap toAdd;
 
     /**
      * Map containing deleted blobs.
      */
-    private TreeMap<String, String> toDelete;
+    private PathMap toDelete;
+
+    /** type tag of an encoded staging area. */
+    private static final char KIND = 's';
 
     /** Current Working Directory. */
     private static File cwd = new File(System.getProperty("user.dir"));
@@ -29,23 +30,47 @@ public class StagingArea implements Serializable {
      * constructs a staging area.
      */
     public StagingArea() {
-        toAdd = new TreeMap<String, String>();
-        toDelete = new TreeMap<String, String>();
+        toAdd = new PathMap();
+        toDelete = new PathMap();
+    }
+
+    /**
+     * encode this staging area.
+     * @return bytes as read by decode.
+     */
+    public byte[] encode() {
+        Encoder e = new Encoder(KIND);
+        toAdd.encode(e);
+        toDelete.encode(e);
+        return e.toByteArray();
+    }
+
+    /**
+     * decode a staging area written by encode.
+     * @param data : encoded staging area.
+     * @return StagingArea
+     */
+    public static StagingArea decode(byte[] data) {
+        Decoder d = new Decoder(data, KIND);
+        StagingArea s = new StagingArea();
+        s.toAdd = PathMap.decode(d);
+        s.toDelete = PathMap.decode(d);
+        return s;
     }
 
     /**
      * getter for toAdd.
-     * @return TreeMap
+     * @return PathMap
      */
-    public TreeMap<String, String> getToAdd() {
+    public PathMap getToAdd() {
         return toAdd;
     }
 
     /**
      * getter for toDelete.
-     * @return TreeMap
+     * @return PathMap
      */
-    public TreeMap<String, String> getToDelete() {
+    public PathMap getToDelete() {
         return toDelete;
     }
 
@@ -55,7 +80,7 @@ public class StagingArea implements Serializable {
      * @return String hash
      */
     public String getAdd(String key) {
-        return (String) toAdd.get(key);
+        return toAdd.get(key);
     }
 
     /**
@@ -67,6 +92,15 @@ public class StagingArea implements Serializable {
         toAdd.put(key, value);
     }
 
+    /**
+     * individual setter for toAdd.
+     * @param key : key to add to toAdd.
+     * @param id : blob id.
+     */
+    public void stageAdd(String key, ObjectId id) {
+        toAdd.put(key, id);
+    }
+
     /**
      * individual setter for toDelete.
      * @param key : key to add to toAdd.
@@ -77,6 +111,15 @@ public class StagingArea implements Serializable {
 
     }
 
+    /**
+     * individual setter for toDelete.
+     * @param key : key to add to toDelete.
+     * @param id : blob id.
+     */
+    public void stageDelete(String key, ObjectId id) {
+        toDelete.put(key, id);
+    }
+
     /**
      * check if toAdd contains the file with filename name.
      * @param name : name checked
@@ -106,7 +149,7 @@ public class StagingArea implements Serializable {
         if (!f.exists()) {
             f.createNewFile();
         }
-        Utils.writeObject(f, this);
+        Utils.writeContents(f, (Object) encode());
     }
 
     /**
@@ -116,8 +159,7 @@ public class StagingArea implements Serializable {
     public static StagingArea fromFile() {
         File s = new File(gitletFolder, "staging" + ".txt");
         if (s.exists()) {
-            StagingArea r = Utils.readObject(s, StagingArea.class);
-            return r;
+            return decode(Utils.readContents(s));
         } else {
             throw new IllegalArgumentException("staging area no exist");
         }
@@ -127,8 +169,8 @@ public class StagingArea implements Serializable {
      * reset both toAdd and toDel after commit.
      */
     public void reset() {
-        toAdd = new TreeMap<>();
-        toDelete = new TreeMap<>();
+        toAdd = new PathMap();
+        toDelete = new PathMap();
 
     }
 
@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A directory snapshot, stored once under .gitlet/.trees/ and named
+ *  by the SHA-1 of its encoding.  A tree maps the names in one
+ *  directory to blob ids (files) or to the ids of other trees
+ *  (subdirectories), so commits that change a few files share every
+ *  untouched subtree with their parent.
+ *  @author Michelle Wu
+ */
+public class Tree {
+
+    /** type tag of encoded trees. **/
+    static final char KIND = ObjectStore.TREE;
+
+    /** files in this directory.
+     * key: file name; value: blob hash. **/
+    private TreeMap<String, String> blobs = new TreeMap<>();
+
+    /** subdirectories of this directory.
+     * key: directory name; value: tree hash. **/
+    private TreeMap<String, String> trees = new TreeMap<>();
+
+    /**
+     * get the files in this directory.
+     * @return key: file name; value: blob hash.
+     */
+    TreeMap<String, String> blobs() {
+        return blobs;
+    }
+
+    /**
+     * get the subdirectories of this directory.
+     * @return key: directory name; value: tree hash.
+     */
+    TreeMap<String, String> trees() {
+        return trees;
+    }
+
+    /**
+     * read a tree.
+     * @param id : tree hash; null for the empty tree.
+     * @return Tree
+     */
+    static Tree fromFile(String id) {
+        Tree t = new Tree();
+        if (id == null) {
+            return t;
+        }
+        if (!ObjectStore.contains(KIND, id)) {
+            throw new IllegalArgumentException("tree no exist");
+        }
+        Decoder d = new Decoder(ObjectStore.read(KIND, id), KIND);
+        t.blobs = d.readIdMap();
+        t.trees = d.readIdMap();
+        return t;
+    }
+
+    /**
+     * save this tree unless an identical one is already stored.
+     * @return hash of this tree.
+     */
+    private String save() {
+        Encoder e = new Encoder(KIND);
+        e.writeIdMap(blobs);
+        e.writeIdMap(trees);
+        byte[] data = e.toByteArray();
+        String id = Utils.sha1(data);
+        ObjectStore.write(KIND, id, data);
+        return id;
+    }
+
+    /**
+     * apply staged changes to the tree with hash ROOT and save
+     * every tree that changed; unchanged subtrees keep their hashes.
+     * @param root : hash of the starting tree; null for the empty tree.
+     * @param adds : paths to add or change; key: path, value: blob hash.
+     * @param dels : paths to remove.
+     * @return hash of the resulting tree.
+     */
+    static String update(String root, Map<String, String> adds,
+                         Map<String, String> dels) {
+        Tree t = fromFile(root);
+        t.apply(adds, dels);
+        return t.save();
+    }
+
+    /**
+     * apply ADDS and DELS, whose paths are relative to this tree,
+     * saving changed subtrees.
+     * @param adds : paths to add or change.
+     * @param dels : paths to remove.
+     */
+    private void apply(Map<String, String> adds,
+                       Map<String, String> dels) {
+        TreeMap<String, TreeMap<String, String>> subAdds = new TreeMap<>();
+        TreeMap<String, TreeMap<String, String>> subDels = new TreeMap<>();
+        for (Map.Entry<String, String> e : adds.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                blobs.put(path, e.getValue());
+            } else {
+                subAdds.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        for (Map.Entry<String, String> e : dels.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                blobs.remove(path);
+            } else {
+                subDels.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        TreeMap<String, String> none = new TreeMap<>();
+        TreeSet<String> dirs = new TreeSet<>(subAdds.keySet());
+        dirs.addAll(subDels.keySet());
+        for (String dir : dirs) {
+            Tree sub = fromFile(trees.get(dir));
+            sub.apply(subAdds.getOrDefault(dir, none),
+                    subDels.getOrDefault(dir, none));
+            if (sub.blobs.isEmpty() && sub.trees.isEmpty()) {
+                trees.remove(dir);
+            } else {
+                trees.put(dir, sub.save());
+            }
+        }
+    }
+
+    /**
+     * list every file under the tree with hash ROOT.
+     * @param root : tree hash; null for the empty tree.
+     * @return key: path, value: blob hash.
+     */
+    static PathMap flatten(String root) {
+        PathMap.Builder result = new PathMap.Builder();
+        fromFile(root).flattenInto("", result);
+        return result.build();
+    }
+
+    /**
+     * find the blob of one file.
+     * @param root : hash of the root tree; may be null.
+     * @param path : file name relative to the root, '/'-separated.
+     * @return blob hash, or null if there is no such file.
+     */
+    static String find(String root, String path) {
+        Tree t = fromFile(root);
+        int slash = path.indexOf('/');
+        while (slash >= 0) {
+            String sub = t.trees.get(path.substring(0, slash));
+            if (sub == null) {
+                return null;
+            }
+            t = fromFile(sub);
+            path = path.substring(slash + 1);
+            slash = path.indexOf('/');
+        }
+        return t.blobs.get(path);
+    }
+
+    /**
+     * find the files that differ between two trees, without reading
+     * subtrees whose hashes are equal.
+     * @param oldRoot : hash of the old root tree; may be null.
+     * @param newRoot : hash of the new root tree; may be null.
+     * @param before : gets the old blob of each differing file that
+     *               existed in the old tree.
+     * @param after : gets the new blob of each differing file that
+     *              exists in the new tree.
+     */
+    static void diff(String oldRoot, String newRoot,
+                     Map<String, String> before, Map<String, String> after) {
+        if (oldRoot == null ? newRoot != null : !oldRoot.equals(newRoot)) {
+            diffInto("", fromFile(oldRoot), fromFile(newRoot), before,
+                    after);
+        }
+    }
+
+    /**
+     * add the files that differ between A and B to BEFORE and AFTER.
+     * @param prefix : path of the trees followed by '/', or "".
+     * @param a : old tree.
+     * @param b : new tree.
+     * @param before : old blob of each differing file.
+     * @param after : new blob of each differing file.
+     */
+    private static void diffInto(String prefix, Tree a, Tree b,
+                                 Map<String, String> before,
+                                 Map<String, String> after) {
+        TreeSet<String> names = new TreeSet<>(a.blobs.keySet());
+        names.addAll(b.blobs.keySet());
+        for (String name : names) {
+            String was = a.blobs.get(name);
+            String now = b.blobs.get(name);
+            if (was == null ? now != null : !was.equals(now)) {
+                if (was != null) {
+                    before.put(prefix + name, was);
+                }
+                if (now != null) {
+                    after.put(prefix + name, now);
+                }
+            }
+        }
+        names = new TreeSet<>(a.trees.keySet());
+        names.addAll(b.trees.keySet());
+        for (String name : names) {
+            String was = a.trees.get(name);
+            String now = b.trees.get(name);
+            if (was == null ? now != null : !was.equals(now)) {
+                diffInto(prefix + name + "/", fromFile(was), fromFile(now),
+                        before, after);
+            }
+        }
+    }
+
+    /**
+     * add every file under this tree to RESULT, in order of path: a
+     * subdirectory's files go where its name followed by '/' would.
+     * @param prefix : path of this tree followed by '/', or "".
+     * @param result : map being built.
+     */
+    private void flattenInto(String prefix, PathMap.Builder result) {
+        Iterator<Map.Entry<String, String>> files =
+                blobs.entrySet().iterator();
+        Map.Entry<String, String> file = files.hasNext() ? files.next()
+                : null;
+        for (Map.Entry<String, String> e : trees.entrySet()) {
+            String dir = e.getKey() + "/";
+            while (file != null && file.getKey().compareTo(dir) < 0) {
+                result.add(prefix + file.getKey(),
+                        ObjectId.of(file.getValue()));
+                file = files.hasNext() ? files.next() : null;
+            }
+            fromFile(e.getValue()).flattenInto(prefix + dir, result);
+        }
+        for (; file != null; file = files.hasNext() ? files.next() : null) {
+            result.add(prefix + file.getKey(), ObjectId.of(file.getValue()));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Prints the differences between versions of files in unified diff
+ *  format.  Each file is compared as soon as it is given and its hunks
+ *  are written and flushed before the next file is read, so a long diff
+ *  starts to appear at once.
+ *  @author Michelle Wu
+ */
+class UnifiedDiff {
+
+    /** Number of unchanged lines shown around each change. */
+    private static final int CONTEXT = 3;
+
+    /** Where the diff is printed. */
+    private final PrintWriter out;
+
+    /** Compares the lines of each file. */
+    private final Diff diff = new Diff();
+
+    /**
+     * a printer writing to OUT and comparing with ALGORITHM.
+     * @param out : destination.
+     * @param algorithm : Diff.MYERS or Diff.PATIENCE.
+     */
+    UnifiedDiff(PrintWriter out, int algorithm) {
+        this.out = out;
+        diff.setAlgorithm(algorithm);
+    }
+
+    /**
+     * print the changes to PATH from blob OLDID to blob NEWID.
+     * @param path : file name.
+     * @param oldId : hash of the old blob, or null if there was none.
+     * @param newId : hash of the new blob, or null if there is none.
+     */
+    void blobs(String path, String oldId, String newId) {
+        compare(path, oldId, lines(oldId), newId, lines(newId));
+    }
+
+    /**
+     * print the changes to PATH from blob OLDID to working file F.
+     * @param path : file name.
+     * @param oldId : hash of the old blob, or null if there was none.
+     * @param f : the working file, or null if it was removed.
+     */
+    void file(String path, String oldId, File f) {
+        List<String> now;
+        if (f == null) {
+            now = new ArrayList<>();
+        } else {
+            try (InputStream in = new FileInputStream(f)) {
+                now = lines(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        compare(path, oldId, lines(oldId), f == null ? null : path, now);
+    }
+
+    /**
+     * read the lines of blob ID.
+     * @param id : blob hash, or null for no lines.
+     * @return List
+     */
+    private static List<String> lines(String id) {
+        if (id == null) {
+            return new ArrayList<>();
+        }
+        try (InputStream in = Blobs.open(id)) {
+            return lines(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * read the lines of IN.
+     * @param in : contents.
+     * @return List
+     * @throws IOException if IN cannot be read.
+     */
+    private static List<String> lines(InputStream in) throws IOException {
+        BufferedReader r = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8));
+        ArrayList<String> result = new ArrayList<>();
+        for (String line = r.readLine(); line != null; line = r.readLine()) {
+            result.add(line);
+        }
+        return result;
+    }
+
+    /**
+     * print the header and hunks of one file.
+     * @param path : file name.
+     * @param before : null if the file did not exist before.
+     * @param a : old lines.
+     * @param after : null if the file does not exist after.
+     * @param b : new lines.
+     */
+    void compare(String path, String before, List<String> a,
+                 String after, List<String> b) {
+        diff.setSequences(a, b);
+        int[] edits = diff.diffs();
+        if (edits.length == 0) {
+            return;
+        }
+        out.println("diff --git a/" + path + " b/" + path);
+        out.println("--- " + (before == null ? "/dev/null" : "a/" + path));
+        out.println("+++ " + (after == null ? "/dev/null" : "b/" + path));
+        int first = 0;
+        while (first < edits.length) {
+            int last = first;
+            while (last + 4 < edits.length
+                   && edits[last + 4] - (edits[last] + edits[last + 1])
+                      <= 2 * CONTEXT) {
+                last += 4;
+            }
+            hunk(edits, first, last, a, b);
+            first = last + 4;
+        }
+        out.flush();
+    }
+
+    /**
+     * print the hunk covering edits FIRST through LAST.
+     * @param edits : result of Diff.diffs().
+     * @param first : index of the first edit of the hunk.
+     * @param last : index of the last edit of the hunk.
+     * @param a : old lines.
+     * @param b : new lines.
+     */
+    private void hunk(int[] edits, int first, int last, List<String> a,
+                      List<String> b) {
+        int start1 = Math.max(0, edits[first] - CONTEXT);
+        int start2 = edits[first + 2] - (edits[first] - start1);
+        int end1 = Math.min(a.size(),
+                edits[last] + edits[last + 1] + CONTEXT);
+        int end2 = edits[last + 2] + edits[last + 3]
+                + end1 - (edits[last] + edits[last + 1]);
+        out.println("@@ -" + range(start1, end1 - start1)
+                + " +" + range(start2, end2 - start2) + " @@");
+        int x = start1;
+        for (int e = first; e <= last; e += 4) {
+            for (; x < edits[e]; x += 1) {
+                out.println(" " + a.get(x));
+            }
+            for (int i = 0; i < edits[e + 1]; i += 1) {
+                out.println("-" + a.get(edits[e] + i));
+            }
+            for (int i = 0; i < edits[e + 3]; i += 1) {
+                out.println("+" + b.get(edits[e + 2] + i));
+            }
+            x = edits[e] + edits[e + 1];
+        }
+        for (; x < end1; x += 1) {
+            out.println(" " + a.get(x));
+        }
+    }
+
+    /**
+     * format a hunk range of LEN lines starting at 0-based line START.
+     * @param start : first line.
+     * @param len : number of lines.
+     * @return String
+     */
+    private static String range(int start, int len) {
+        if (len == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (len == 0 ? start : start + 1) + "," + len;
+    }
+}
@@ -0,0 +1,498 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A daemon that watches the working directory and remembers which
+ *  paths changed, so that commands can ask it instead of looking at
+ *  every file.  It is started by "watch" and answers on the Unix-domain
+ *  socket .gitlet/watch.sock.
+ *
+ *  Each answer carries a token naming the moment it was given; asked
+ *  with that token, the watcher lists the paths changed since.  A path
+ *  ending in '/' is a directory that appeared or disappeared as a
+ *  whole, and everything once known under it must be looked at again.
+ *  When the watcher cannot tell (it was restarted, the operating system
+ *  dropped events, or it has forgotten that far back) it answers
+ *  "full" and the caller scans the working directory itself.  Before
+ *  answering, the watcher creates a cookie file in .gitlet and waits
+ *  to see its event, so every change made before the question is in
+ *  the answer.
+ *  @author Michelle Wu
+ */
+class Watcher {
+
+    /** Current Working Directory. */
+    private static File cwd = new File(System.getProperty("user.dir"));
+
+    /** Where the watcher listens. */
+    static final File SOCKET = new File(cwd, ".gitlet/watch.sock");
+
+    /** Prefix of the names of cookie files. */
+    private static final String COOKIE = "watch-cookie-";
+
+    /** How long to wait for a cookie or an answer, in milliseconds. */
+    private static final long TIMEOUT = 2000;
+
+    /** Number of changed paths remembered before they are forgotten
+     *  and older tokens get "full" answers. */
+    private static final int LIMIT = 1 << 20;
+
+    /** Size of the buffers used to read requests and answers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Working directory being watched. */
+    private final Path root = cwd.toPath().toAbsolutePath().normalize();
+
+    /** The metadata folder, watched only for cookies. */
+    private final Path gitlet = root.resolve(".gitlet");
+
+    /** Receives the events. */
+    private final WatchService service;
+
+    /** Directory of each registration. */
+    private final HashMap<WatchKey, Path> dirs = new HashMap<>();
+
+    /** Directories being watched, other than .gitlet. */
+    private final HashSet<Path> watched = new HashSet<>();
+
+    /** Distinguishes this watcher's tokens from an earlier one's. */
+    private final String instance = Long.toString(System.nanoTime(), 36);
+
+    /** Number of event batches seen. */
+    private long seq;
+
+    /** Tokens older than this get "full" answers. */
+    private long floor;
+
+    /** The batch in which each path last changed. */
+    private final HashMap<String, Long> latest = new HashMap<>();
+
+    /** The paths whose latest change was in each batch, so that every
+     *  path in latest is in exactly one batch. */
+    private final TreeMap<Long, Set<String>> batches = new TreeMap<>();
+
+    /** Number of cookies made. */
+    private long cookiesMade;
+
+    /** Highest-numbered cookie seen. */
+    private long cookiesSeen;
+
+    /** The paths that changed since some token, or the lack of them. */
+    static class Changes {
+        /** Token for the next question. */
+        private final String token;
+        /** Paths changed, or null if every file must be looked at. */
+        private final List<String> paths;
+
+        /**
+         * an answer.
+         * @param token : token for the next question.
+         * @param paths : changed paths; null if unknown.
+         */
+        Changes(String token, List<String> paths) {
+            this.token = token;
+            this.paths = paths;
+        }
+
+        /**
+         * get the token for the next question.
+         * @return String
+         */
+        String token() {
+            return token;
+        }
+
+        /**
+         * get the changed paths, relative to cwd and '/'-separated.
+         * @return List, or null if every file must be looked at.
+         */
+        List<String> paths() {
+            return paths;
+        }
+    }
+
+    /**
+     * a watcher of the working directory.
+     * @throws IOException if the directory cannot be watched.
+     */
+    Watcher() throws IOException {
+        service = root.getFileSystem().newWatchService();
+    }
+
+    /**
+     * ask the running watcher what changed since TOKEN.
+     * @param token : from an earlier answer, or null.
+     * @return Changes, or null if no watcher answers.
+     */
+    static Changes changes(String token) {
+        if (!SOCKET.exists()) {
+            return null;
+        }
+        String answer = ask("since " + (token == null ? "-" : token));
+        if (answer == null) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>(Arrays.asList(
+                answer.split("\n")));
+        String[] head = lines.remove(0).split(" ");
+        if (head.length != 2) {
+            return null;
+        }
+        return new Changes(head[1], head[0].equals("changes") ? lines
+                : null);
+    }
+
+    /**
+     * tell the running watcher to stop.
+     * @return true if one was running.
+     */
+    static boolean stop() {
+        return SOCKET.exists() && ask("stop") != null;
+    }
+
+    /**
+     * send REQUEST to the watcher and read its answer.
+     * @param request : one line.
+     * @return the answer, or null if none came in time.
+     */
+    private static String ask(String request) {
+        try (SocketChannel ch =
+                     SocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            ch.connect(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            ch.write(ByteBuffer.wrap((request + "\n")
+                    .getBytes(StandardCharsets.UTF_8)));
+            ch.configureBlocking(false);
+            ch.register(selector, SelectionKey.OP_READ);
+            ByteArrayOutputStream answer = new ByteArrayOutputStream();
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            long deadline = System.currentTimeMillis() + 2 * TIMEOUT;
+            while (true) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return null;
+                }
+                selector.select(left);
+                buf.clear();
+                int n = ch.read(buf);
+                if (n < 0) {
+                    return answer.toString(StandardCharsets.UTF_8.name());
+                }
+                answer.write(buf.array(), 0, n);
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * watch the working directory and answer questions until told to
+     * stop.
+     * @throws IOException if the socket cannot be opened.
+     */
+    void run() throws IOException {
+        if (SOCKET.exists()) {
+            if (ask("since -") != null) {
+                throw new GitletException("A watcher is already running.");
+            }
+            SOCKET.delete();
+        }
+        register(root, false);
+        Thread events = new Thread(this::events, "gitlet-watch");
+        events.setDaemon(true);
+        events.start();
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = answer(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            SOCKET.delete();
+            service.close();
+        }
+    }
+
+    /**
+     * read one question from CLIENT and answer it.
+     * @param client : connection.
+     * @return false if told to stop.
+     * @throws IOException if CLIENT cannot be read or written.
+     */
+    private boolean answer(SocketChannel client) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        while (request.size() == 0
+               || request.toByteArray()[request.size() - 1] != '\n') {
+            buf.clear();
+            int n = client.read(buf);
+            if (n < 0) {
+                return true;
+            }
+            request.write(buf.array(), 0, n);
+        }
+        String line = request.toString(StandardCharsets.UTF_8.name()).trim();
+        String reply;
+        boolean running = true;
+        if (line.equals("stop")) {
+            reply = "stopped\n";
+            running = false;
+        } else if (line.startsWith("since ")) {
+            reply = since(line.substring("since ".length()));
+        } else {
+            reply = "error\n";
+        }
+        ByteBuffer out = ByteBuffer.wrap(reply.getBytes(
+                StandardCharsets.UTF_8));
+        while (out.hasRemaining()) {
+            client.write(out);
+        }
+        return running;
+    }
+
+    /**
+     * list the paths changed since TOKEN, once every event up to now
+     * has been seen.
+     * @param token : from an earlier answer, or "-".
+     * @return answer: a line "changes TOKEN" followed by one path per
+     *         line, or a line "full TOKEN".
+     * @throws IOException if the cookie cannot be made.
+     */
+    private synchronized String since(String token) throws IOException {
+        cookiesMade += 1;
+        long cookie = cookiesMade;
+        Path file = gitlet.resolve(COOKIE + cookie);
+        Files.write(file, new byte[0]);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        try {
+            while (cookiesSeen < cookie
+                   && System.currentTimeMillis() < deadline) {
+                wait(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        String now = instance + ":" + seq;
+        long since = parse(token);
+        if (cookiesSeen < cookie || since < floor) {
+            return "full " + now + "\n";
+        }
+        StringBuilder reply = new StringBuilder("changes " + now + "\n");
+        for (Set<String> paths : batches.tailMap(since, false).values()) {
+            for (String path : paths) {
+                reply.append(path).append('\n');
+            }
+        }
+        return reply.toString();
+    }
+
+    /**
+     * read a token of this watcher.
+     * @param token : from an earlier answer.
+     * @return its batch number, or -1 if it is not this watcher's.
+     */
+    private long parse(String token) {
+        int colon = token.indexOf(':');
+        if (colon < 0 || !token.substring(0, colon).equals(instance)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(colon + 1));
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+
+    /**
+     * record events until the watch service is closed.
+     */
+    private void events() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                synchronized (this) {
+                    seq += 1;
+                    Path dir = dirs.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (dir != null) {
+                            record(dir, event);
+                        }
+                    }
+                    if (!key.reset()) {
+                        dirs.remove(key);
+                        watched.remove(dir);
+                    }
+                    if (latest.size() > LIMIT) {
+                        latest.clear();
+                        batches.clear();
+                        floor = seq;
+                    }
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            return;
+        }
+    }
+
+    /**
+     * record one EVENT in DIR.
+     * @param dir : watched directory.
+     * @param event : what happened.
+     */
+    private void record(Path dir, WatchEvent<?> event) {
+        WatchEvent.Kind<?> kind = event.kind();
+        if (kind == StandardWatchEventKinds.OVERFLOW) {
+            floor = seq;
+            return;
+        }
+        Path p = dir.resolve((Path) event.context());
+        if (dir.equals(gitlet)) {
+            String name = p.getFileName().toString();
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE
+                    && name.startsWith(COOKIE)) {
+                cookiesSeen = Math.max(cookiesSeen,
+                        Long.parseLong(name.substring(COOKIE.length())));
+            }
+            return;
+        }
+        if (p.equals(gitlet)) {
+            return;
+        }
+        String path = relative(p);
+        changed(path);
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            changed(path + "/");
+            if (watched.contains(p)) {
+                forget(p);
+            }
+        } else if (kind == StandardWatchEventKinds.ENTRY_CREATE
+                && Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+            changed(path + "/");
+            try {
+                register(p, true);
+            } catch (IOException excp) {
+                floor = seq;
+            }
+        }
+    }
+
+    /**
+     * stop watching DIR and the directories under it, which have been
+     * deleted or moved away.
+     * @param dir : directory.
+     */
+    private void forget(Path dir) {
+        Iterator<Map.Entry<WatchKey, Path>> i = dirs.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<WatchKey, Path> e = i.next();
+            if (e.getValue().startsWith(dir)) {
+                e.getKey().cancel();
+                watched.remove(e.getValue());
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * note that PATH changed in the current batch.
+     * @param path : relative to the working directory.
+     */
+    private void changed(String path) {
+        Long old = latest.put(path, seq);
+        if (old != null && old != seq) {
+            Set<String> earlier = batches.get(old);
+            earlier.remove(path);
+            if (earlier.isEmpty()) {
+                batches.remove(old);
+            }
+        }
+        batches.computeIfAbsent(seq, k -> new LinkedHashSet<>()).add(path);
+    }
+
+    /**
+     * watch DIR and every directory under it.
+     * @param dir : directory.
+     * @param report : true to note every file found as changed.
+     * @throws IOException if a directory cannot be watched.
+     */
+    private void register(Path dir, boolean report) throws IOException {
+        TreeSet<String> found = new TreeSet<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d,
+                    BasicFileAttributes attrs) throws IOException {
+                dirs.put(d.register(service,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY), d);
+                if (d.equals(gitlet)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watched.add(d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path f,
+                    BasicFileAttributes attrs) {
+                found.add(relative(f));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (report) {
+            for (String path : found) {
+                changed(path);
+            }
+        }
+    }
+
+    /**
+     * name P relative to the working directory.
+     * @param p : path under the working directory.
+     * @return '/'-separated relative path.
+     */
+    private String relative(Path p) {
+        return root.relativize(p).toString()
+                .replace(File.separatorChar, '/');
+    }
+}